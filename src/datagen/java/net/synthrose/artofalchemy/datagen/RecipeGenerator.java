@@ -0,0 +1,62 @@
+package net.synthrose.artofalchemy.datagen;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import net.minecraft.Bootstrap;
+import net.synthrose.artofalchemy.essentia.AoAEssentia;
+import net.synthrose.artofalchemy.recipe.GeneratedRecipes;
+
+// Writes GeneratedRecipes out as JSON under the given recipes directory, run with `gradlew runDatagen`.
+// Output is deterministic, and files left over from removed essentia are deleted.
+public class RecipeGenerator {
+
+	private static final String[] GENERATED_DIRS = {"vessels", "materia_downgrade"};
+
+	public static void main(String[] args) throws IOException {
+		Path root = Paths.get(args.length > 0 ? args[0] : "src/main/resources/data/artofalchemy/recipes");
+		Bootstrap.initialize();
+		AoAEssentia.registerEssentia();
+		generate(root);
+	}
+
+	public static void generate(Path root) throws IOException {
+		Gson gson = new Gson();
+		Set<Path> written = new HashSet<>();
+		for (GeneratedRecipes.Entry entry : GeneratedRecipes.getEntries()) {
+			Path file = root.resolve(entry.getId().getPath() + ".json");
+			StringWriter out = new StringWriter();
+			JsonWriter writer = new JsonWriter(out);
+			writer.setIndent("\t");
+			gson.toJson(entry.toJson(), writer);
+			out.write("\n");
+			Files.createDirectories(file.getParent());
+			Files.write(file, out.toString().getBytes(StandardCharsets.UTF_8));
+			written.add(file);
+		}
+
+		for (String dir : GENERATED_DIRS) {
+			List<Path> stale;
+			try (Stream<Path> files = Files.list(root.resolve(dir))) {
+				stale = files.filter((file) -> !written.contains(file)).collect(Collectors.toList());
+			}
+			for (Path file : stale) {
+				Files.delete(file);
+			}
+		}
+		System.out.println("Generated " + written.size() + " recipes in " + root);
+	}
+
+}
@@ -0,0 +1,96 @@
+package net.synthrose.artofalchemy.blockentity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Cost of one world tick over a mix of working and sleeping machines: every machine ticked in list
+// order the way the world ticks Tickables, against the same machines in a TimingWheel
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TickSchedulerBenchmark {
+	
+	@Param({"64", "512", "4096", "32768"})
+	public int machines;
+	
+	// Percentage of machines with work to do; the rest are asleep
+	@Param({"0", "10", "100"})
+	public int working;
+	
+	private static final int TYPES = 3;
+	
+	// Stand-in for a machine tick: a sleeping machine only compares its wake stamp
+	static final class Machine implements AlchemyMachine {
+		
+		private final boolean working;
+		private long stamp = 0;
+		private long sleepStamp = 0;
+		private int progress = 0;
+		
+		Machine(boolean working) {
+			this.working = working;
+		}
+		
+		@Override
+		public long tick(long time) {
+			if (!working && stamp == sleepStamp) {
+				return time + AlchemyTickScheduler.SLEEP_RECHECK;
+			}
+			if (++progress >= 100) {
+				progress = 0;
+				stamp++;
+			}
+			return time + 1;
+		}
+	
+	}
+	
+	private final List<Machine> list = new ArrayList<>();
+	private TimingWheel<Machine> wheel;
+	private long listTime = 0;
+	private long wheelTime = 0;
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		wheel = new TimingWheel<>(0);
+		for (int i = 0; i < machines; i++) {
+			list.add(new Machine(random.nextInt(100) < working));
+		}
+		// Chunk load order, not grouped by type
+		Collections.shuffle(list, random);
+		for (int i = 0; i < machines; i++) {
+			// Spread the sleepers' rechecks out the way staggered placement would
+			wheel.schedule(list.get(i), i % TYPES, 1 + random.nextInt(AlchemyTickScheduler.SLEEP_RECHECK));
+		}
+	}
+	
+	@Benchmark
+	public long vanilla() {
+		long time = ++listTime;
+		long sum = 0;
+		for (int i = 0; i < list.size(); i++) {
+			sum += list.get(i).tick(time);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	public int scheduler() {
+		wheel.advance(++wheelTime, Machine::tick);
+		return wheel.size();
+	}
+
+}
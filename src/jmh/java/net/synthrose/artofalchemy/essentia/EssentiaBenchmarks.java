@@ -0,0 +1,52 @@
+package net.synthrose.artofalchemy.essentia;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.registry.Registry;
+
+// Shared setup for the essentia benchmarks. Each parameter combination runs in its own fork,
+// so inflating the registry here never leaks into another measurement.
+final class EssentiaBenchmarks {
+	
+	private static boolean registered = false;
+	
+	private EssentiaBenchmarks() {
+	}
+	
+	// Registers the built-in essentia, then pads the registry with filler entries the way add-ons would
+	static synchronized void bootstrap(int registrySize) {
+		if (!registered) {
+			Bootstrap.initialize();
+			AoAEssentia.registerEssentia();
+			registered = true;
+		}
+		for (int i = RegistryEssentia.INSTANCE.getRawIdBound(); i < registrySize; i++) {
+			Registry.register(RegistryEssentia.INSTANCE, new Identifier("benchmark", "filler_" + i),
+				new Essentia(0xFFFFFF));
+		}
+	}
+	
+	// Picks essentia spread evenly over the registry, so inflated registries exercise high raw ids too
+	static Essentia essentia(int index, int types) {
+		int bound = RegistryEssentia.INSTANCE.getRawIdBound();
+		return RegistryEssentia.INSTANCE.get(index * bound / types);
+	}
+	
+	static EssentiaStack stack(int types, int amount) {
+		EssentiaStack stack = new EssentiaStack();
+		for (int i = 0; i < types; i++) {
+			stack.add(essentia(i, types), amount);
+		}
+		return stack;
+	}
+	
+	static EssentiaContainer container(int types, int amount) {
+		EssentiaContainer container = new EssentiaContainer().setCapacity(Integer.MAX_VALUE);
+		container.setContents(stack(types, amount));
+		for (int i = 0; i < types; i++) {
+			container.whitelist(essentia(i, types));
+		}
+		return container;
+	}
+	
+}
@@ -0,0 +1,68 @@
+package net.synthrose.artofalchemy.essentia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EssentiaContainerBenchmark {
+	
+	@Param({"1", "4", "13"})
+	public int types;
+	
+	@Param({"13", "256"})
+	public int registrySize;
+	
+	private EssentiaContainer source;
+	private EssentiaContainer target;
+	private EssentiaContainer filtered;
+	private EssentiaStack delta;
+	private EssentiaStack mixed;
+	
+	@Setup
+	public void setup() {
+		EssentiaBenchmarks.bootstrap(registrySize);
+		source = EssentiaBenchmarks.container(types, 100000);
+		target = EssentiaBenchmarks.container(types, 0);
+		delta = EssentiaBenchmarks.stack(types, 10);
+		// Only every other type is whitelisted, so enforcement has to strip the rest of the mixed stack
+		mixed = EssentiaBenchmarks.stack(types, 10);
+		filtered = new EssentiaContainer().setWhitelistEnabled(true);
+		for (int i = 0; i < types; i += 2) {
+			filtered.whitelist(EssentiaBenchmarks.essentia(i, types));
+		}
+	}
+	
+	// Moves the delta across and back so both containers keep their contents between invocations
+	@Benchmark
+	public EssentiaStack pushPullStack() {
+		source.pushStack(target, delta);
+		return target.pushStack(source, delta);
+	}
+	
+	@Benchmark
+	public boolean pushPullEntireStack() {
+		return source.pushEntireStack(target, delta) & target.pushEntireStack(source, delta);
+	}
+	
+	@Benchmark
+	public boolean canAccept() {
+		return target.canAccept(delta);
+	}
+	
+	@Benchmark
+	public boolean enforceWhitelist() {
+		filtered.getContents().add(mixed);
+		return filtered.enforceWhitelist();
+	}
+	
+}
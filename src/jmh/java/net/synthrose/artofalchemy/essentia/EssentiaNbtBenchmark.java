@@ -0,0 +1,61 @@
+package net.synthrose.artofalchemy.essentia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.minecraft.nbt.CompoundTag;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EssentiaNbtBenchmark {
+	
+	@Param({"1", "4", "13"})
+	public int types;
+	
+	@Param({"13", "256"})
+	public int registrySize;
+	
+	private EssentiaStack stack;
+	private EssentiaContainer container;
+	private CompoundTag stackTag;
+	private CompoundTag containerTag;
+	
+	@Setup
+	public void setup() {
+		EssentiaBenchmarks.bootstrap(registrySize);
+		stack = EssentiaBenchmarks.stack(types, 1000);
+		container = EssentiaBenchmarks.container(types, 1000).setWhitelistEnabled(true);
+		stackTag = stack.toTag();
+		containerTag = container.toTag();
+	}
+	
+	@Benchmark
+	public CompoundTag writeStack() {
+		return stack.toTag();
+	}
+	
+	@Benchmark
+	public EssentiaStack readStack() {
+		return new EssentiaStack(stackTag);
+	}
+	
+	@Benchmark
+	public CompoundTag writeContainer() {
+		return container.toTag();
+	}
+	
+	@Benchmark
+	public EssentiaContainer readContainer() {
+		return new EssentiaContainer(containerTag);
+	}
+	
+}
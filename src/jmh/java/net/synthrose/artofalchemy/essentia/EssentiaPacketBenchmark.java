@@ -0,0 +1,77 @@
+package net.synthrose.artofalchemy.essentia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.util.PacketByteBuf;
+
+// Encodes a recipe sync's worth of essentia stacks into one buffer, comparing the old
+// NBT form with the varint form. The "bytes" counter is reported as a rate alongside the
+// score; bytes divided by the score gives the encoded size of one packet.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EssentiaPacketBenchmark {
+	
+	@Param({"1", "4", "13"})
+	public int types;
+	
+	@Param({"64", "1024"})
+	public int recipes;
+	
+	private EssentiaStack[] stacks;
+	
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Size {
+		
+		public long bytes;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+		}
+		
+	}
+	
+	@Setup
+	public void setup() {
+		EssentiaBenchmarks.bootstrap(13);
+		stacks = new EssentiaStack[recipes];
+		for (int i = 0; i < recipes; i++) {
+			stacks[i] = EssentiaBenchmarks.stack(types, 1 + (i * 37) % 400);
+		}
+	}
+	
+	@Benchmark
+	public PacketByteBuf writeNbt(Size size) {
+		PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+		for (EssentiaStack stack : stacks) {
+			buf.writeCompoundTag(stack.toTag());
+		}
+		size.bytes += buf.writerIndex();
+		return buf;
+	}
+	
+	@Benchmark
+	public PacketByteBuf writeVarint(Size size) {
+		PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+		for (EssentiaStack stack : stacks) {
+			stack.write(buf);
+		}
+		size.bytes += buf.writerIndex();
+		return buf;
+	}
+	
+}
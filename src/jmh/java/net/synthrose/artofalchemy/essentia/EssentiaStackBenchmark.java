@@ -0,0 +1,70 @@
+package net.synthrose.artofalchemy.essentia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EssentiaStackBenchmark {
+	
+	@Param({"1", "4", "13"})
+	public int types;
+	
+	@Param({"13", "256"})
+	public int registrySize;
+	
+	private EssentiaStack stack;
+	private EssentiaStack delta;
+	private EssentiaStack larger;
+	
+	@Setup
+	public void setup() {
+		EssentiaBenchmarks.bootstrap(registrySize);
+		stack = EssentiaBenchmarks.stack(types, 1000);
+		delta = EssentiaBenchmarks.stack(types, 10);
+		larger = EssentiaBenchmarks.stack(types, 2000);
+	}
+	
+	// Adds and then removes the same delta so the stack stays the same size between invocations
+	@Benchmark
+	public EssentiaStack addSubtractInPlace() {
+		stack.add(delta);
+		stack.subtract(delta);
+		return stack;
+	}
+	
+	@Benchmark
+	public EssentiaStack addCopy() {
+		return EssentiaStack.add(stack, delta);
+	}
+	
+	@Benchmark
+	public EssentiaStack subtractCopy() {
+		return EssentiaStack.subtract(stack, delta);
+	}
+	
+	@Benchmark
+	public boolean containsHit() {
+		return stack.contains(delta);
+	}
+	
+	@Benchmark
+	public boolean containsMiss() {
+		return stack.contains(larger);
+	}
+	
+	@Benchmark
+	public EssentiaStack scaled() {
+		return stack.scaled(0.5);
+	}
+	
+}
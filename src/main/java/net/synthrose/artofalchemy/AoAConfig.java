@@ -0,0 +1,72 @@
+package net.synthrose.artofalchemy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.logging.log4j.Level;
+
+import net.fabricmc.loader.api.FabricLoader;
+
+// Options read from config/artofalchemy.properties; missing keys are written back with their defaults
+public class AoAConfig {
+
+	// Build the vessel and materia downgrade recipes in code instead of loading their JSON.
+	// Data packs can't override those recipes while this is on.
+	public static boolean builtinRecipes = false;
+	// Ticks between recipe lookup statistics log lines; 0 turns them off
+	public static int statsLogInterval = 6000;
+	// Most crafts a machine catches up on when its chunk loads again, covering the time it spent
+	// unloaded; 0 leaves machines paused while unloaded
+	public static int offlineCrafts = 64;
+
+	public static void loadConfig() {
+		File file = new File(FabricLoader.getInstance().getConfigDirectory(), ArtOfAlchemy.MOD_ID + ".properties");
+		Properties properties = new Properties();
+		if (file.isFile()) {
+			try (InputStream in = new FileInputStream(file)) {
+				properties.load(in);
+			} catch (IOException e) {
+				ArtOfAlchemy.log(Level.WARN, "Could not read " + file.getName() + ", using defaults");
+			}
+		}
+
+		builtinRecipes = getBoolean(properties, "builtin_recipes", builtinRecipes);
+		statsLogInterval = getInt(properties, "stats_log_interval", statsLogInterval);
+		offlineCrafts = Math.max(0, getInt(properties, "offline_crafts", offlineCrafts));
+
+		try (OutputStream out = new FileOutputStream(file)) {
+			properties.store(out, ArtOfAlchemy.MOD_NAME + " configuration");
+		} catch (IOException e) {
+			ArtOfAlchemy.log(Level.WARN, "Could not write " + file.getName());
+		}
+	}
+
+	private static boolean getBoolean(Properties properties, String key, boolean fallback) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			properties.setProperty(key, String.valueOf(fallback));
+			return fallback;
+		}
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	private static int getInt(Properties properties, String key, int fallback) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			properties.setProperty(key, String.valueOf(fallback));
+			return fallback;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			ArtOfAlchemy.log(Level.WARN, "Invalid value for " + key + ": " + value);
+			return fallback;
+		}
+	}
+
+}
@@ -6,7 +6,9 @@ import net.minecraft.item.ItemGroup;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.Identifier;
 import net.synthrose.artofalchemy.block.AoABlocks;
+import net.synthrose.artofalchemy.blockentity.AlchemyTickScheduler;
 import net.synthrose.artofalchemy.blockentity.AoABlockEntities;
+import net.synthrose.artofalchemy.command.AoACommands;
 import net.synthrose.artofalchemy.essentia.AoAEssentia;
 import net.synthrose.artofalchemy.fluid.AoAFluids;
 import net.synthrose.artofalchemy.gui.AoAContainers;
@@ -33,14 +35,18 @@ public class ArtOfAlchemy implements ModInitializer {
         log(Level.INFO, "Humankind cannot gain anything without first giving something in return. "
         		+ "To obtain, something of equal value must be lost.");
         
+        AoAConfig.loadConfig();
         AoAEssentia.registerEssentia();
         AoAFluids.registerFluids();
         AoABlocks.registerBlocks();
         AoAItems.registerItems();
         AoABlockEntities.registerBlockEntities();
+        AlchemyTickScheduler.registerScheduler();
         AoAContainers.registerContainers();
         AoARecipes.registerRecipes();
+        FuelHelper.registerFuels();
         AoANetworking.initializeNetworking();
+        AoACommands.registerCommands();
     }
     
     public static Identifier id(String name) {
@@ -1,13 +1,79 @@
 package net.synthrose.artofalchemy;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Level;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import net.fabricmc.fabric.api.event.server.ServerStopCallback;
+import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
+import net.fabricmc.fabric.api.resource.ResourceReloadListenerKeys;
+import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
 import net.minecraft.block.entity.AbstractFurnaceBlockEntity;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
+import net.minecraft.resource.Resource;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.resource.ResourceType;
+import net.minecraft.tag.ItemTags;
+import net.minecraft.tag.Tag;
+import net.minecraft.tag.TagContainer;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.JsonHelper;
+import net.minecraft.util.registry.Registry;
+import net.synthrose.artofalchemy.tag.ItemBitSet;
 
+// Burn times indexed by item raw id. The vanilla table is expensive to build, so it's built once per
+// data reload (after tags, which it depends on) together with any calcinator-specific values from
+// data/<namespace>/calcinator_fuels/*.json:
+//   { "fuels": { "minecraft:blaze_rod": 3200, "#minecraft:logs": 400, "minecraft:coal": 0 } }
+// Entries starting with # name an item tag, and a time of 0 stops an item from being fuel.
+// Without a running server (a client connected elsewhere) only the vanilla table is used, rebuilt
+// whenever a tag sync installs a new item tag container.
 public class FuelHelper {
-
+	
+	private static final String FUEL_PATH = "calcinator_fuels";
+	
+	// Set by the running server's data reloads and dropped when it stops
+	private static volatile int[] serverTimes = null;
+	private static volatile ClientTable clientTimes = null;
+	
+	public static void registerFuels() {
+		ResourceManagerHelper.get(ResourceType.SERVER_DATA)
+			.registerReloadListener(new SimpleSynchronousResourceReloadListener() {
+			
+			@Override
+			public void apply(ResourceManager manager) {
+				serverTimes = buildTable(manager);
+			}
+			
+			@Override
+			public Identifier getFabricId() {
+				return ArtOfAlchemy.id(FUEL_PATH);
+			}
+			
+			@Override
+			public Collection<Identifier> getFabricDependencies() {
+				return Collections.singleton(ResourceReloadListenerKeys.TAGS);
+			}
+		
+		});
+		ServerStopCallback.EVENT.register((server) -> serverTimes = null);
+	}
+	
 	public static boolean isFuel(Item item) {
-		return AbstractFurnaceBlockEntity.createFuelTimeMap().containsKey(item);
+		return fuelTime(item) > 0;
 	}
 	
 	public static boolean isFuel(ItemStack stack) {
@@ -19,7 +85,9 @@ public class FuelHelper {
 	}
 	
 	public static int fuelTime(Item item) {
-		return AbstractFurnaceBlockEntity.createFuelTimeMap().getOrDefault(item, 0);
+		int[] table = getTable();
+		int id = Registry.ITEM.getRawId(item);
+		return (id >= 0 && id < table.length) ? table[id] : 0;
 	}
 	
 	public static int fuelTime(ItemStack stack) {
@@ -29,5 +97,83 @@ public class FuelHelper {
 			return fuelTime(stack.getItem());
 		}
 	}
+	
+	private static int[] getTable() {
+		int[] table = serverTimes;
+		if (table != null) {
+			return table;
+		}
+		// Clients never see a data reload; vanilla values are all they need to validate slots
+		TagContainer<Item> container = ItemTags.getContainer();
+		ClientTable current = clientTimes;
+		if (current == null || current.container != container) {
+			current = new ClientTable(container, buildTable(null));
+			clientTimes = current;
+		}
+		return current.times;
+	}
+	
+	private static int[] buildTable(ResourceManager manager) {
+		int[] table = new int[ItemBitSet.rawIdBound()];
+		for (Map.Entry<Item, Integer> entry : AbstractFurnaceBlockEntity.createFuelTimeMap().entrySet()) {
+			set(table, entry.getKey(), entry.getValue());
+		}
+		if (manager != null) {
+			List<Identifier> files = new ArrayList<>(manager.findResources(FUEL_PATH, (path) -> path.endsWith(".json")));
+			// Sorted so overlapping files always apply in the same order
+			Collections.sort(files);
+			for (Identifier file : files) {
+				try (Resource resource = manager.getResource(file);
+						Reader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+					JsonObject json = new JsonParser().parse(reader).getAsJsonObject();
+					applyFuels(table, JsonHelper.getObject(json, "fuels"));
+				} catch (IOException | RuntimeException e) {
+					ArtOfAlchemy.log(Level.ERROR, "Could not load calcinator fuels from " + file + ": " + e.getMessage());
+				}
+			}
+		}
+		return table;
+	}
+	
+	private static void applyFuels(int[] table, JsonObject fuels) {
+		for (Map.Entry<String, JsonElement> entry : fuels.entrySet()) {
+			String key = entry.getKey();
+			int time = Math.max(0, entry.getValue().getAsInt());
+			if (key.startsWith("#")) {
+				Tag<Item> tag = ItemTags.getContainer().get(new Identifier(key.substring(1)));
+				if (tag == null) {
+					throw new IllegalArgumentException("Unknown item tag " + key);
+				}
+				for (Item item : tag.values()) {
+					set(table, item, time);
+				}
+			} else {
+				Identifier id = new Identifier(key);
+				if (!Registry.ITEM.getOrEmpty(id).isPresent()) {
+					throw new IllegalArgumentException("Unknown item " + key);
+				}
+				set(table, Registry.ITEM.get(id), time);
+			}
+		}
+	}
+	
+	private static void set(int[] table, Item item, int time) {
+		int id = Registry.ITEM.getRawId(item);
+		if (id >= 0 && id < table.length) {
+			table[id] = time;
+		}
+	}
+	
+	private static final class ClientTable {
+		
+		private final TagContainer<Item> container;
+		private final int[] times;
+		
+		private ClientTable(TagContainer<Item> container, int[] times) {
+			this.container = container;
+			this.times = times;
+		}
+		
+	}
 
 }
@@ -67,6 +67,7 @@ public interface ImplementedInventory extends Inventory {
     default ItemStack takeInvStack(int slot, int count) {
         ItemStack result = Inventories.splitStack(getItems(), slot, count);
         if (!result.isEmpty()) {
+            onInvModified();
             markDirty();
         }
         return result;
@@ -76,7 +77,11 @@ public interface ImplementedInventory extends Inventory {
      */
     @Override
     default ItemStack removeInvStack(int slot) {
-        return Inventories.removeStack(getItems(), slot);
+        ItemStack result = Inventories.removeStack(getItems(), slot);
+        if (!result.isEmpty()) {
+            onInvModified();
+        }
+        return result;
     }
     /**
      * Replaces the current stack in the {@code slot} with the provided stack.
@@ -89,6 +94,7 @@ public interface ImplementedInventory extends Inventory {
         if (stack.getCount() > getInvMaxStackAmount()) {
             stack.setCount(getInvMaxStackAmount());
         }
+        onInvModified();
     }
     /**
      * Clears {@linkplain #getItems() the item list}}.
@@ -96,6 +102,23 @@ public interface ImplementedInventory extends Inventory {
     @Override
     default void clear() {
         getItems().clear();
+        onInvModified();
+    }
+    // Change tracking
+    /**
+     * Returns a counter that increases whenever the contents change.
+     * <p>(default implementation) Always 0; override together with {@link #onInvModified()}
+     * to make changes detectable with a single compare.
+     */
+    default long getInvModCount() {
+        return 0;
+    }
+    /**
+     * Called after every change made through this interface. Implementations that mutate
+     * stacks in {@linkplain #getItems() the item list} directly should call it themselves.
+     */
+    default void onInvModified() {
+        // Override if you want behavior.
     }
     @Override
     default void markDirty() {
@@ -95,6 +95,16 @@ public class BlockSynthesizer extends Block implements BlockEntityProvider {
 		return new BlockEntitySynthesizer();
 	}
 
+	@Override
+	public void neighborUpdate(BlockState state, World world, BlockPos pos, Block block, BlockPos neighborPos,
+			boolean moved) {
+		BlockEntity blockEntity = world.getBlockEntity(pos);
+		if (blockEntity instanceof BlockEntitySynthesizer) {
+			((BlockEntitySynthesizer) blockEntity).wake();
+		}
+		super.neighborUpdate(state, world, pos, block, neighborPos, moved);
+	}
+
 	@Override
 	public void onBlockRemoved(BlockState state, World world, BlockPos pos, BlockState newState, boolean moved) {
 		if (state.getBlock() != newState.getBlock()) {
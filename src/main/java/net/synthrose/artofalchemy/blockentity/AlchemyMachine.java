@@ -0,0 +1,10 @@
+package net.synthrose.artofalchemy.blockentity;
+
+// Block entities ticked by an AlchemyTickScheduler instead of the world's ticking list
+public interface AlchemyMachine {
+	
+	// Runs the machine for the given world time and returns the next time it has anything to do.
+	// Anything that could make it due sooner calls AlchemyTickScheduler.wake().
+	long tick(long time);
+	
+}
@@ -0,0 +1,84 @@
+package net.synthrose.artofalchemy.blockentity;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.fabricmc.fabric.api.event.server.ServerStopCallback;
+import net.fabricmc.fabric.api.event.world.WorldTickCallback;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+// Ticks every AoA machine in a server world. Machines sit in a timing wheel keyed by the next tick they
+// have anything to do, so idle ones cost nothing until they're due or woken, and each tick's due
+// machines run grouped by type. Machines add themselves when placed in a world and are dropped once
+// their block entity is removed or unloaded. Schedulers hold their machines, which hold the world, so
+// the weak keys alone never let a world go; they're all dropped when the server stops.
+public class AlchemyTickScheduler {
+	
+	private static final Map<World, AlchemyTickScheduler> SCHEDULERS = new WeakHashMap<>();
+	private static final Map<Class<?>, Integer> GROUPS = new IdentityHashMap<>();
+	// How often a sleeping machine checks for changes nothing wakes it for, like a recipe reload
+	public static final int SLEEP_RECHECK = 100;
+	
+	private final TimingWheel<AlchemyMachine> wheel;
+	
+	private AlchemyTickScheduler(long time) {
+		this.wheel = new TimingWheel<>(time);
+	}
+	
+	public static void registerScheduler() {
+		WorldTickCallback.EVENT.register((world) -> {
+			if (!world.isClient()) {
+				AlchemyTickScheduler scheduler = SCHEDULERS.get(world);
+				if (scheduler != null) {
+					scheduler.tick(world);
+				}
+			}
+		});
+		ServerStopCallback.EVENT.register((server) -> SCHEDULERS.clear());
+	}
+	
+	// Server worlds only; clients don't tick machines at all
+	public static AlchemyTickScheduler get(World world) {
+		return SCHEDULERS.computeIfAbsent(world, (key) -> new AlchemyTickScheduler(key.getTime()));
+	}
+	
+	// Schedules a machine for the next tick unless it's already scheduled
+	public void add(AlchemyMachine machine) {
+		if (!wheel.contains(machine)) {
+			wheel.schedule(machine, getGroup(machine), wheel.getTime() + 1);
+		}
+	}
+	
+	// Brings a machine forward to the next tick; does nothing while the machine itself is ticking
+	public void wake(AlchemyMachine machine) {
+		wheel.wake(machine, wheel.getTime() + 1);
+	}
+	
+	public int size() {
+		return wheel.size();
+	}
+	
+	private void tick(World world) {
+		wheel.advance(world.getTime(), (machine, time) -> run(world, machine, time));
+	}
+	
+	private static long run(World world, AlchemyMachine machine, long time) {
+		BlockEntity blockEntity = (BlockEntity) machine;
+		BlockPos pos = blockEntity.getPos();
+		// Checked before getBlockEntity(), which would otherwise load the chunk back in
+		if (blockEntity.isRemoved() || !world.isChunkLoaded(pos) || world.getBlockEntity(pos) != blockEntity) {
+			return -1;
+		}
+		return machine.tick(time);
+	}
+	
+	private static int getGroup(AlchemyMachine machine) {
+		synchronized (GROUPS) {
+			return GROUPS.computeIfAbsent(machine.getClass(), (type) -> GROUPS.size());
+		}
+	}
+	
+}
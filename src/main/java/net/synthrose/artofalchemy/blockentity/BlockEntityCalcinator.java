@@ -2,36 +2,49 @@ package net.synthrose.artofalchemy.blockentity;
 
 import io.github.cottonmc.cotton.gui.PropertyDelegateHolder;
 import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
+import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.inventory.Inventories;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.screen.PropertyDelegate;
 import net.minecraft.util.DefaultedList;
-import net.minecraft.util.Tickable;
-import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.synthrose.artofalchemy.AoAConfig;
 import net.synthrose.artofalchemy.FuelHelper;
 import net.synthrose.artofalchemy.ImplementedInventory;
 import net.synthrose.artofalchemy.block.BlockCalcinator;
+import net.synthrose.artofalchemy.recipe.RecipeCache;
 import net.synthrose.artofalchemy.recipe.RecipeCalcination;
 import net.synthrose.artofalchemy.recipe.AoARecipes;
 
 public class BlockEntityCalcinator extends BlockEntity
-	implements ImplementedInventory, Tickable, PropertyDelegateHolder, BlockEntityClientSerializable {
+	implements ImplementedInventory, AlchemyMachine, PropertyDelegateHolder, BlockEntityClientSerializable {
 	
 	private int OPERATION_TIME = 100;
 	
+	// Fuel left as of fuelTick, burning down two per tick from there; fuelTick is -1 until first ticked
 	private int fuel = 0;
+	private long fuelTick = -1;
 	private int maxFuel = 20;
-	private int progress = 0;
+	// World tick the current operation started at, or -1 when idle; progress is derived from it
+	private long startTick = -1;
 	private int maxProgress = OPERATION_TIME;
+	// World time this was last saved at, until the first tick after loading catches up from it
+	private long savedTick = -1;
+	// Anything synced to clients bumps one of these; sync() then runs at most once per tick
+	private long modCount = 0;
+	private long invModCount = 0;
+	private long syncedModCount = -1;
 	
 	protected final DefaultedList<ItemStack> items = DefaultedList.ofSize(3, ItemStack.EMPTY);
+	protected final RecipeCache<RecipeCalcination> recipes = new RecipeCache<>(AoARecipes.CALCINATION_INDEX);
 	protected final PropertyDelegate delegate = new PropertyDelegate() {
 		
 		@Override
 		public int size() {
-			return 4;
+			return 5;
 		}
 		
 		@Override
@@ -44,25 +57,38 @@ public class BlockEntityCalcinator extends BlockEntity
 				maxFuel = value;
 				break;
 			case 2:
-				progress = value;
+				startTick = SyncedTicks.decode(value, world.getTime());
 				break;
 			case 3:
 				maxProgress = value;
 				break;
+			case 4:
+				fuelTick = SyncedTicks.decode(value, world.getTime());
+				break;
 			}
 		}
 		
 		@Override
 		public int get(int index) {
+			// Servers only send where fuel and progress started; clients fill the bars in from their own clock
+			boolean client = (world != null && world.isClient());
 			switch(index) {
 			case 0:
-				return fuel;
+				if (client) {
+					return getFuel(world.getTime());
+				}
+				return isBurning(world.getTime()) ? fuel : 0;
 			case 1:
 				return maxFuel;
 			case 2:
-				return progress;
+				if (client) {
+					return SyncedTicks.elapsed(startTick, maxProgress, world.getTime());
+				}
+				return SyncedTicks.encode(startTick);
 			case 3:
 				return maxProgress;
+			case 4:
+				return SyncedTicks.encode(fuelTick);
 			default:
 				return 0;
 			}
@@ -74,8 +100,29 @@ public class BlockEntityCalcinator extends BlockEntity
 		super(AoABlockEntities.CALCINATOR);
 	}
 	
-	private boolean isBurning() {
-		return fuel > 0;
+	// Covers both placement and chunk loads; the scheduler drops the machine again once it's gone
+	@Override
+	public void setLocation(World world, BlockPos pos) {
+		super.setLocation(world, pos);
+		if (world != null && !world.isClient()) {
+			AlchemyTickScheduler.get(world).add(this);
+		}
+	}
+	
+	private int getFuel(long time) {
+		if (fuelTick < 0) {
+			return fuel;
+		}
+		return (int) Math.max(0, fuel - 2 * Math.max(0, time - fuelTick));
+	}
+	
+	private boolean isBurning(long time) {
+		return getFuel(time) > 0;
+	}
+	
+	// First tick with no fuel left
+	private long getBurnout() {
+		return fuelTick + (fuel + 1) / 2;
 	}
 	
 	private boolean canCraft(RecipeCalcination recipe) {
@@ -96,7 +143,7 @@ public class BlockEntityCalcinator extends BlockEntity
 				count = outStack.getCount();
 			}
 			
-			if (container != ItemStack.EMPTY && inSlot.getCount() != container.getCount()) {
+			if (recipe.hasContainer() && inSlot.getCount() != container.getCount()) {
 				 return false;
 			}
 			
@@ -129,7 +176,7 @@ public class BlockEntityCalcinator extends BlockEntity
 			count = outStack.getCount();
 		}
 		
-		if (container != ItemStack.EMPTY) {
+		if (recipe.hasContainer()) {
 			items.set(0, container.copy());
 		} else {
 			inSlot.decrement(recipe.getCost());
@@ -141,13 +188,18 @@ public class BlockEntityCalcinator extends BlockEntity
 		} else {
 			outSlot.increment(count);
 		}
+		onInvModified();
 		
 	}
 	
 	@Override
 	public CompoundTag toTag(CompoundTag tag) {
 		tag.putInt("fuel", fuel);
-		tag.putInt("progress", progress);
+		tag.putLong("fuel_tick", fuelTick);
+		tag.putLong("start_tick", startTick);
+		if (world != null) {
+			tag.putLong("saved_tick", world.getTime());
+		}
 		Inventories.toTag(tag, items);
 		return super.toTag(tag);
 	}
@@ -157,7 +209,22 @@ public class BlockEntityCalcinator extends BlockEntity
 		super.fromTag(tag);
 		Inventories.fromTag(tag, items);
 		fuel = tag.getInt("fuel");
-		progress = tag.getInt("progress");
+		fuelTick = tag.contains("fuel_tick") ? tag.getLong("fuel_tick") : -1;
+		startTick = tag.contains("start_tick") ? tag.getLong("start_tick") : -1;
+		long saved = tag.contains("saved_tick") ? tag.getLong("saved_tick") : -1;
+		if (world == null) {
+			// Loaded with its chunk; the first tick catches up from here
+			savedTick = saved;
+		} else {
+			// Copied onto a machine already in a world, like a picked block being placed: keep the
+			// progress it had, but don't replay the time it spent as an item
+			savedTick = -1;
+			if (saved >= 0) {
+				long shift = world.getTime() - saved;
+				startTick = (startTick >= 0) ? startTick + shift : -1;
+				fuelTick = (fuelTick >= 0) ? fuelTick + shift : -1;
+			}
+		}
 		maxFuel = FuelHelper.fuelTime(items.get(1));
 		maxProgress = OPERATION_TIME;
 	}
@@ -180,64 +247,128 @@ public class BlockEntityCalcinator extends BlockEntity
 	
 
 	@Override
-	public void tick() {
-		boolean wasBurning = isBurning();
-		boolean dirty = false;
-		
-		if (wasBurning) {
-			fuel = MathHelper.clamp(fuel - 2, 0, maxFuel);
+	public long tick(long time) {
+		if (fuelTick < 0) {
+			fuelTick = time;
+		}
+		if (savedTick >= 0) {
+			catchUp(time);
 		}
+		boolean dirty = false;
+		boolean working = false;
 		
 		if (!world.isClient()) {
 			ItemStack inSlot = items.get(0);
 			ItemStack fuelSlot = items.get(1);
 			
-			if (!inSlot.isEmpty() && (isBurning() || FuelHelper.isFuel(fuelSlot))) {
-				RecipeCalcination recipe = world.getRecipeManager()
-						.getFirstMatch(AoARecipes.CALCINATION, this, world).orElse(null);
+			if (!inSlot.isEmpty() && (isBurning(time) || FuelHelper.isFuel(fuelSlot))) {
+				RecipeCalcination recipe = recipes.getRecipe(this, world);
 				boolean craftable = canCraft(recipe);
 				
-				if (!isBurning()) {
-					if (FuelHelper.isFuel(fuelSlot) && craftable) {
-						maxFuel = FuelHelper.fuelTime(fuelSlot);
-						fuel += maxFuel;
-						fuelSlot.decrement(1);
-						dirty = true;
-					} else if (progress != 0) {
-						progress = 0;
-					}
+				if (!isBurning(time) && FuelHelper.isFuel(fuelSlot) && craftable) {
+					maxFuel = FuelHelper.fuelTime(fuelSlot);
+					fuel = maxFuel;
+					fuelTick = time;
+					fuelSlot.decrement(1);
+					onInvModified();
+					dirty = true;
 				}
 				
-				if (isBurning() && craftable) {
-					if (progress < maxProgress) {
-						progress++;
+				if (isBurning(time) && craftable) {
+					working = true;
+					if (startTick < 0) {
+						// The first tick counts, as it did when progress was incremented each tick
+						startTick = time - 1;
 					}
-					if (progress >= maxProgress) {
+					if (time - startTick >= maxProgress) {
 						doCraft(recipe);
-						progress -= maxProgress;
+						startTick += maxProgress;
 						dirty = true;
 					}
 				}
-				
-				if (!craftable && progress != 0) {
-					progress = 0;
-				}
-			} else if (progress != 0) {
-				progress = 0;
 			}
 			
-			if (isBurning() != wasBurning) {
-				dirty = true;
-				world.setBlockState(pos, world.getBlockState(pos).with(BlockCalcinator.LIT, isBurning()));
+			if (!working) {
+				startTick = -1;
 			}
-			
 		}
 		
 		if (dirty) {
 			markDirty();
 		}
+		if (!world.isClient()) {
+			updateBlockState(time);
+			syncIfModified();
+		}
+		// Runs again when the operation completes or the fuel burns out, whichever is first, or when woken
+		long next = time + AlchemyTickScheduler.SLEEP_RECHECK;
+		if (isBurning(time)) {
+			next = Math.min(next, getBurnout());
+		}
+		if (startTick >= 0) {
+			next = Math.min(next, startTick + maxProgress);
+		}
+		return next;
 	}
 
+	// LIT follows the fuel, which only runs out at burnout, so it's written once at the end of the
+	// tick and only on an actual change
+	private void updateBlockState(long time) {
+		BlockState state = world.getBlockState(pos);
+		BlockState target = state.with(BlockCalcinator.LIT, isBurning(time));
+		if (target != state) {
+			world.setBlockState(pos, target);
+		}
+	}
+	
+	// First tick after loading: runs the crafts that would have completed since the last save, up to
+	// AoAConfig.offlineCrafts, refuelling from the fuel slot as each load burns out, then resumes the
+	// current operation from where that leaves it
+	private void catchUp(long time) {
+		long saved = savedTick;
+		savedTick = -1;
+		if (saved >= time) {
+			return;
+		} else if (startTick < 0) {
+			// Idle fuel still burns while away, unless catching up is off altogether
+			if (AoAConfig.offlineCrafts == 0) {
+				fuelTick += time - saved;
+			}
+			return;
+		}
+		ItemStack fuelSlot = items.get(1);
+		RecipeCalcination recipe = recipes.getRecipe(this, world);
+		int crafts = 0;
+		while (crafts < AoAConfig.offlineCrafts && startTick + maxProgress <= time && canCraft(recipe)) {
+			long done = startTick + maxProgress;
+			while (getBurnout() <= done && FuelHelper.isFuel(fuelSlot)) {
+				long burnout = getBurnout();
+				maxFuel = FuelHelper.fuelTime(fuelSlot);
+				fuel = maxFuel;
+				fuelTick = burnout;
+				fuelSlot.decrement(1);
+				onInvModified();
+			}
+			if (getBurnout() <= done) {
+				// Burnt out partway; the normal tick resets the operation
+				break;
+			}
+			doCraft(recipe);
+			startTick = done;
+			crafts++;
+			recipe = recipes.getRecipe(this, world);
+		}
+		if (AoAConfig.offlineCrafts == 0 || (crafts >= AoAConfig.offlineCrafts && startTick + maxProgress <= time)) {
+			// Out of allowance; the rest of the time away is skipped rather than produced or burnt
+			long skipped = time - Math.max(saved, startTick);
+			startTick += skipped;
+			fuelTick += skipped;
+		}
+		if (crafts > 0) {
+			markDirty();
+		}
+	}
+	
 	@Override
 	public PropertyDelegate getPropertyDelegate() {
 		return delegate;
@@ -246,7 +377,37 @@ public class BlockEntityCalcinator extends BlockEntity
 	@Override
 	public void markDirty() {
 		super.markDirty();
-		if (!world.isClient()) {
+		modCount++;
+		wake();
+	}
+	
+	@Override
+	public long getInvModCount() {
+		return invModCount;
+	}
+	
+	@Override
+	public void onInvModified() {
+		invModCount++;
+		wake();
+	}
+	
+	// Increases whenever anything sent to the client changes
+	public long getModCount() {
+		return modCount + invModCount;
+	}
+	
+	// Pulls the machine into the next tick after anything that could start or stop its work
+	public void wake() {
+		if (world != null && !world.isClient()) {
+			AlchemyTickScheduler.get(world).wake(this);
+		}
+	}
+	
+	private void syncIfModified() {
+		long stamp = getModCount();
+		if (stamp != syncedModCount) {
+			syncedModCount = stamp;
 			sync();
 		}
 	}
@@ -258,7 +419,10 @@ public class BlockEntityCalcinator extends BlockEntity
 	
 	@Override
 	public CompoundTag toClientTag(CompoundTag tag) {
-		return toTag(tag);
+		toTag(tag);
+		// Only meaningful to the server's catch-up
+		tag.remove("saved_tick");
+		return tag;
 	}
 	
 }
@@ -2,39 +2,57 @@ package net.synthrose.artofalchemy.blockentity;
 
 import io.github.cottonmc.cotton.gui.PropertyDelegateHolder;
 import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
+import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.inventory.Inventories;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.screen.PropertyDelegate;
 import net.minecraft.util.DefaultedList;
-import net.minecraft.util.Tickable;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.synthrose.artofalchemy.AoAConfig;
 import net.synthrose.artofalchemy.ImplementedInventory;
 import net.synthrose.artofalchemy.block.BlockDissolver;
 import net.synthrose.artofalchemy.essentia.EssentiaContainer;
 import net.synthrose.artofalchemy.essentia.HasEssentia;
 import net.synthrose.artofalchemy.network.AoANetworking;
 import net.synthrose.artofalchemy.essentia.EssentiaStack;
+import net.synthrose.artofalchemy.recipe.RecipeCache;
 import net.synthrose.artofalchemy.recipe.RecipeDissolution;
 import net.synthrose.artofalchemy.recipe.AoARecipes;
+import net.synthrose.artofalchemy.recipe.EssentiaDerivation;
 
 public class BlockEntityDissolver extends BlockEntity implements ImplementedInventory,
-	Tickable, PropertyDelegateHolder, BlockEntityClientSerializable, HasEssentia {
+	AlchemyMachine, PropertyDelegateHolder, BlockEntityClientSerializable, HasEssentia {
 	
 	private final int TANK_SIZE = 4000;
-	private final double SPEED_MOD = 2.0;
+	private final int LIT_HOLD = 40;
 	private int alkahest = 0;
 	private int maxAlkahest = TANK_SIZE;
-	private int progress = 0;
+	// World tick the current operation started at, or -1 when idle; progress is derived from it
+	private long startTick = -1;
 	private int maxProgress = 100;
 	private int status = 0;
 	// Status 0: Can craft
 	// Status 1: Generic error (no message)
 	// Status 2: Insufficient alkahest
 	// Status 3: Full output buffer
-	private boolean lit = false;
+	// LIT stays on until this tick after work stops, so a machine flickering between working and
+	// blocked doesn't relight its surroundings every time
+	private long litUntil = -1;
+	// Anything synced to clients bumps one of these; sync() then runs at most once per tick
+	private long modCount = 0;
+	private long invModCount = 0;
+	private long syncedModCount = -1;
+	// Set when a blocking status leaves nothing to do until an input changes; see getWakeStamp()
+	private boolean sleeping = false;
+	private long sleepStamp = 0;
+	// World time this was last saved at, until the first tick after loading catches up from it
+	private long savedTick = -1;
 	
 	protected final DefaultedList<ItemStack> items = DefaultedList.ofSize(1, ItemStack.EMPTY);
+	protected final RecipeCache<RecipeDissolution> recipes = new RecipeCache<>(AoARecipes.DISSOLUTION_INDEX);
 	protected EssentiaContainer essentia = new EssentiaContainer()
 		.setCapacity(TANK_SIZE)
 		.setInput(false)
@@ -56,7 +74,7 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 				maxAlkahest = value;
 				break;
 			case 2:
-				progress = value;
+				startTick = SyncedTicks.decode(value, world.getTime());
 				break;
 			case 3:
 				maxProgress = value;
@@ -75,7 +93,11 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 			case 1:
 				return maxAlkahest;
 			case 2:
-				return progress;
+				// Servers only send the start tick; clients fill the bar in from their own clock
+				if (world != null && world.isClient()) {
+					return SyncedTicks.elapsed(startTick, maxProgress, world.getTime());
+				}
+				return SyncedTicks.encode(startTick);
 			case 3:
 				return maxProgress;
 			case 4:
@@ -91,6 +113,15 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 		super(AoABlockEntities.DISSOLVER);
 	}
 	
+	// Covers both placement and chunk loads; the scheduler drops the machine again once it's gone
+	@Override
+	public void setLocation(World world, BlockPos pos) {
+		super.setLocation(world, pos);
+		if (world != null && !world.isClient()) {
+			AlchemyTickScheduler.get(world).add(this);
+		}
+	}
+	
 	@Override
 	public EssentiaContainer getContainer(int id) {
 		if (id == 0) {
@@ -116,7 +147,7 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	public boolean setAlkahest(int amount) {
 		if (amount >= 0 && amount <= maxAlkahest) {
 			alkahest = amount;
-			world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.FILLED, alkahest > 0));
+			// FILLED follows at the end of the next tick, which markDirty() wakes the machine for
 			markDirty();
 			return true;
 		} else {
@@ -145,18 +176,15 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 			ItemStack container = recipe.getContainer();
 			EssentiaStack results = recipe.getEssentia();
 			
-			maxProgress = (int) (results.getCount() / SPEED_MOD);
-			if (maxProgress < 20) {
-				maxProgress = 20;
-			}
+			maxProgress = recipe.getProcessingTime();
 			
-			if (container != ItemStack.EMPTY && inSlot.getCount() != container.getCount()) {
+			if (recipe.hasContainer() && inSlot.getCount() != container.getCount()) {
 				 return updateStatus(1);
 			}
 			
 			if (inSlot.isDamageable()) {
-				double factor = 1.0 - inSlot.getDamage() / inSlot.getMaxDamage();
-				results.multiply(factor);
+				double factor = 1.0 - (double) inSlot.getDamage() / inSlot.getMaxDamage();
+				results = results.scaled(factor);
 			}
 			
 			if (results.getCount() > alkahest) {
@@ -178,16 +206,18 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 		ItemStack container = recipe.getContainer();
 		
 		if (inSlot.isDamageable()) {
-			double factor = 1.0 - inSlot.getDamage() / inSlot.getMaxDamage();
-			results.multiply(factor);
+			double factor = 1.0 - (double) inSlot.getDamage() / inSlot.getMaxDamage();
+			results = results.scaled(factor);
 		}
 		
-		if (container != ItemStack.EMPTY) {
+		if (recipe.hasContainer()) {
 			items.set(0, container.copy());
 		} else {
 			inSlot.decrement(1);
 		}
 		
+		onInvModified();
+		
 		essentia.addEssentia(results);
 		alkahest -= results.getCount();
 		
@@ -196,7 +226,10 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	@Override
 	public CompoundTag toTag(CompoundTag tag) {
 		tag.putInt("alkahest", alkahest);
-		tag.putInt("progress", progress);
+		tag.putLong("start_tick", startTick);
+		if (world != null) {
+			tag.putLong("saved_tick", world.getTime());
+		}
 		tag.putInt("max_progress", maxProgress);
 		tag.putInt("status", status);
 		tag.put("essentia", essentia.toTag());
@@ -207,9 +240,22 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	@Override
 	public void fromTag(CompoundTag tag) {
 		super.fromTag(tag);
+		sleeping = false;
 		Inventories.fromTag(tag, items);
 		alkahest = tag.getInt("alkahest");
-		progress = tag.getInt("progress");
+		startTick = tag.contains("start_tick") ? tag.getLong("start_tick") : -1;
+		long saved = tag.contains("saved_tick") ? tag.getLong("saved_tick") : -1;
+		if (world == null) {
+			// Loaded with its chunk; the first tick catches up from here
+			savedTick = saved;
+		} else {
+			// Copied onto a machine already in a world, like a picked block being placed: keep the
+			// progress it had, but don't replay the time it spent as an item
+			savedTick = -1;
+			if (saved >= 0 && startTick >= 0) {
+				startTick += world.getTime() - saved;
+			}
+		}
 		maxProgress = tag.getInt("max_progress");
 		status = tag.getInt("status");
 		essentia = new EssentiaContainer(tag.getCompound("essentia"));
@@ -228,7 +274,21 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	
 
 	@Override
-	public void tick() {
+	public long tick(long time) {
+		if (savedTick >= 0) {
+			catchUp(time);
+		}
+		if (startTick >= 0) {
+			// Worked right up to now
+			litUntil = time + LIT_HOLD;
+		}
+		if (sleeping) {
+			if (getWakeStamp() == sleepStamp) {
+				updateBlockState(time);
+				return getNextTick(time);
+			}
+			sleeping = false;
+		}
 		boolean dirty = false;
 		
 		if (!world.isClient()) {
@@ -240,46 +300,94 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 			} else if (!hasAlkahest()) {
 				updateStatus(2);
 			} else {
-				RecipeDissolution recipe = world.getRecipeManager()
-						.getFirstMatch(AoARecipes.DISSOLUTION, this, world).orElse(null);
+				RecipeDissolution recipe = recipes.getRecipe(this, world);
 				canWork = canCraft(recipe);
 			
 				if (canWork) {
-					if (progress < maxProgress) {
-						if (!lit) {
-							world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.LIT, true));
-							lit = true;
-						}
-						progress++;
+					if (startTick < 0) {
+						// The first tick counts, as it did when progress was incremented each tick
+						startTick = time - 1;
 					}
-					if (progress >= maxProgress) {
-						progress -= maxProgress;
+					if (time - startTick >= maxProgress) {
+						startTick += maxProgress;
 						doCraft(recipe);
 						AoANetworking.sendEssentiaPacket(world, pos, 0, essentia);
-						if (alkahest <= 0) {
-							world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.FILLED, false));
-						}
 						dirty = true;
 					}
 				}
 			}
 			
 			if (!canWork) {
-				if (progress != 0) {
-					progress = 0;
-				}
-				if (lit) {
-					lit = false;
-					world.setBlockState(pos, world.getBlockState(pos).with(BlockDissolver.LIT, false));
-				}
+				startTick = -1;
 			}
 		}
 		
 		if (dirty) {
 			markDirty();
 		}
+		if (!world.isClient()) {
+			updateBlockState(time);
+			syncIfModified();
+			if (status != 0) {
+				sleeping = true;
+				sleepStamp = getWakeStamp();
+			}
+		}
+		return getNextTick(time);
+	}
+	
+	// Nothing changes before this unless an input does, which wakes the machine
+	private long getNextTick(long time) {
+		long next;
+		if (sleeping) {
+			next = time + AlchemyTickScheduler.SLEEP_RECHECK;
+		} else if (startTick >= 0) {
+			next = startTick + maxProgress;
+		} else {
+			next = time + 1;
+		}
+		if (startTick < 0 && litUntil > time) {
+			next = Math.min(next, litUntil);
+		}
+		return next;
+	}
+	
+	// Block state changes are collected here at the end of the tick and written once, only if they
+	// actually change anything
+	private void updateBlockState(long time) {
+		BlockState state = world.getBlockState(pos);
+		BlockState target = state.with(BlockDissolver.LIT, startTick >= 0 || time < litUntil)
+			.with(BlockDissolver.FILLED, alkahest > 0);
+		if (target != state) {
+			world.setBlockState(pos, target);
+		}
 	}
 
+	// First tick after loading: runs the crafts that would have completed since the last save, up to
+	// AoAConfig.offlineCrafts, then resumes the current operation from where that leaves it
+	private void catchUp(long time) {
+		long saved = savedTick;
+		savedTick = -1;
+		if (startTick < 0 || saved >= time) {
+			return;
+		}
+		RecipeDissolution recipe = recipes.getRecipe(this, world);
+		int crafts = 0;
+		while (crafts < AoAConfig.offlineCrafts && canCraft(recipe) && startTick + maxProgress <= time) {
+			startTick += maxProgress;
+			doCraft(recipe);
+			crafts++;
+			recipe = recipes.getRecipe(this, world);
+		}
+		if (AoAConfig.offlineCrafts == 0 || (crafts >= AoAConfig.offlineCrafts && startTick + maxProgress <= time)) {
+			// Out of allowance; the rest of the time away is skipped rather than produced
+			startTick += time - Math.max(saved, startTick);
+		}
+		if (crafts > 0) {
+			markDirty();
+		}
+	}
+	
 	@Override
 	public PropertyDelegate getPropertyDelegate() {
 		return delegate;
@@ -288,7 +396,44 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 	@Override
 	public void markDirty() {
 		super.markDirty();
-		if (!world.isClient()) {
+		modCount++;
+		wake();
+	}
+	
+	@Override
+	public long getInvModCount() {
+		return invModCount;
+	}
+	
+	@Override
+	public void onInvModified() {
+		invModCount++;
+		wake();
+	}
+	
+	// Increases whenever anything sent to the client changes
+	public long getModCount() {
+		return modCount + invModCount + essentia.getModCount();
+	}
+	
+	// Changes whenever the inventory, essentia, alkahest, status, recipes or derived recipes change
+	private long getWakeStamp() {
+		// update() also publishes a derivation that finished in the background while this slept
+		return getModCount() + AoARecipes.getGeneration() + EssentiaDerivation.update(world.getRecipeManager());
+	}
+	
+	// Called on neighbor updates and whenever the contents change; also pulls the machine into the next tick
+	public void wake() {
+		sleeping = false;
+		if (world != null && !world.isClient()) {
+			AlchemyTickScheduler.get(world).wake(this);
+		}
+	}
+	
+	private void syncIfModified() {
+		long stamp = getModCount();
+		if (stamp != syncedModCount) {
+			syncedModCount = stamp;
 			sync();
 		}
 	}
@@ -300,7 +445,10 @@ public class BlockEntityDissolver extends BlockEntity implements ImplementedInve
 
 	@Override
 	public CompoundTag toClientTag(CompoundTag tag) {
-		return toTag(tag);
+		toTag(tag);
+		// Only meaningful to the server's catch-up
+		tag.remove("saved_tick");
+		return tag;
 	}
 	
 }
@@ -2,34 +2,36 @@ package net.synthrose.artofalchemy.blockentity;
 
 import io.github.cottonmc.cotton.gui.PropertyDelegateHolder;
 import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
+import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.inventory.Inventories;
-import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.recipe.Ingredient;
 import net.minecraft.screen.PropertyDelegate;
-import net.minecraft.tag.Tag;
 import net.minecraft.util.DefaultedList;
-import net.minecraft.util.Tickable;
-import net.synthrose.artofalchemy.ArtOfAlchemy;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.synthrose.artofalchemy.AoAConfig;
 import net.synthrose.artofalchemy.ImplementedInventory;
 import net.synthrose.artofalchemy.block.BlockSynthesizer;
 import net.synthrose.artofalchemy.essentia.EssentiaContainer;
 import net.synthrose.artofalchemy.essentia.HasEssentia;
-import net.synthrose.artofalchemy.item.ItemMateria;
 import net.synthrose.artofalchemy.network.AoANetworking;
 import net.synthrose.artofalchemy.essentia.EssentiaStack;
+import net.synthrose.artofalchemy.recipe.RecipeCache;
 import net.synthrose.artofalchemy.recipe.RecipeSynthesis;
 import net.synthrose.artofalchemy.recipe.AoARecipes;
+import net.synthrose.artofalchemy.tag.AoAItemTags;
 
 public class BlockEntitySynthesizer extends BlockEntity implements ImplementedInventory,
-	Tickable, PropertyDelegateHolder, BlockEntityClientSerializable, HasEssentia {
+	AlchemyMachine, PropertyDelegateHolder, BlockEntityClientSerializable, HasEssentia {
 	
-	private final double SPEED_MOD = 2.0;
 	private final int TANK_SIZE = 4000;
+	private final int LIT_HOLD = 40;
 	private int xp = 0;
-	private int progress = 0;
+	// World tick the current operation started at, or -1 when idle; progress is derived from it
+	private long startTick = -1;
 	private int maxProgress = 200;
 	private int status = 0;
 	// Status 0: Working
@@ -39,9 +41,21 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	// Status 4: Needs essentia
 	// Status 5: Needs container
 	// Status 6: Needs XP (no message)
-	private boolean lit = false;
+	// LIT stays on until this tick after work stops, so a machine flickering between working and
+	// blocked doesn't relight its surroundings every time
+	private long litUntil = -1;
+	// Anything synced to clients bumps one of these; sync() then runs at most once per tick
+	private long modCount = 0;
+	private long invModCount = 0;
+	private long syncedModCount = -1;
+	// Set when a blocking status leaves nothing to do until an input changes; see getWakeStamp()
+	private boolean sleeping = false;
+	private long sleepStamp = 0;
+	// World time this was last saved at, until the first tick after loading catches up from it
+	private long savedTick = -1;
 	
 	protected final DefaultedList<ItemStack> items = DefaultedList.ofSize(3, ItemStack.EMPTY);
+	protected final RecipeCache<RecipeSynthesis> recipes = new RecipeCache<>(AoARecipes.SYNTHESIS_INDEX);
 	protected EssentiaContainer essentiaContainer = new EssentiaContainer()
 		.setCapacity(TANK_SIZE)
 		.setInput(true)
@@ -60,7 +74,7 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 				xp = value;
 				break;
 			case 1:
-				progress = value;
+				startTick = SyncedTicks.decode(value, world.getTime());
 				break;
 			case 2:
 				maxProgress = value;
@@ -77,7 +91,11 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 			case 0:
 				return xp;
 			case 1:
-				return progress;
+				// Servers only send the start tick; clients fill the bar in from their own clock
+				if (world != null && world.isClient()) {
+					return SyncedTicks.elapsed(startTick, maxProgress, world.getTime());
+				}
+				return SyncedTicks.encode(startTick);
 			case 2:
 				return maxProgress;
 			case 3:
@@ -93,6 +111,15 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 		super(AoABlockEntities.SYNTHESIZER);
 	}
 	
+	// Covers both placement and chunk loads; the scheduler drops the machine again once it's gone
+	@Override
+	public void setLocation(World world, BlockPos pos) {
+		super.setLocation(world, pos);
+		if (world != null && !world.isClient()) {
+			AlchemyTickScheduler.get(world).add(this);
+		}
+	}
+	
 	@Override
 	public EssentiaContainer getContainer(int id) {
 		if (id == 0) {
@@ -148,15 +175,11 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 		} else if (essentiaContainer.isEmpty()) {
 			return updateStatus(4);
 		} else {
-			Ingredient container = recipe.getContainer();
 			Ingredient materia = recipe.getMateria();
 			EssentiaStack essentia = recipe.getEssentia();
 			int cost = recipe.getCost();
 			
-			int tier = 1;
-			if (inSlot.getItem() instanceof ItemMateria) {
-				tier = ((ItemMateria) inSlot.getItem()).getTier() + 1;
-			}
+			maxProgress = recipe.getProcessingTime(RecipeSynthesis.getTier(inSlot));
 			
 			if (!materia.test(inSlot) || inSlot.getCount() < cost) {
 				return updateStatus(3);
@@ -166,8 +189,8 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 				return updateStatus(4);
 			}
 			
-			if (container != Ingredient.EMPTY) {
-				if (container.test(outSlot)) {
+			if (recipe.hasContainer()) {
+				if (recipe.isContainer(outSlot)) {
 					if (outSlot.getCount() != 1) {
 						return updateStatus(1);
 					} else {
@@ -177,11 +200,6 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 					return updateStatus(5);
 				}
 			} else {
-				maxProgress = (int) (essentia.getCount() / SPEED_MOD);
-				maxProgress += tier * cost * 5;
-				if (maxProgress < 40) {
-					maxProgress = 40;
-				}
 				if (outSlot.isEmpty()) {
 					return updateStatus(0);
 				} else if (outSlot.getItem() == targetSlot.getItem()) {
@@ -202,18 +220,18 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 		ItemStack inSlot = items.get(0);
 		ItemStack outSlot = items.get(1);
 		ItemStack targetSlot = items.get(2);
-		Ingredient container = recipe.getContainer();
 		EssentiaStack essentia = recipe.getEssentia();
 		int cost = recipe.getCost();
 //		int xpCost = recipe.getXp(targetSlot);
 		
-		if (container != Ingredient.EMPTY || outSlot.isEmpty()) {
+		if (recipe.hasContainer() || outSlot.isEmpty()) {
 			items.set(1, new ItemStack(targetSlot.getItem()));
 		} else {
 			outSlot.increment(1);
 		}
 		
 		inSlot.decrement(cost);
+		onInvModified();
 		essentiaContainer.subtractEssentia(essentia);
 //		this.addXp(-xpCost);
 	}
@@ -221,7 +239,10 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	@Override
 	public CompoundTag toTag(CompoundTag tag) {
 		tag.putInt("xp", xp);
-		tag.putInt("progress", progress);
+		tag.putLong("start_tick", startTick);
+		if (world != null) {
+			tag.putLong("saved_tick", world.getTime());
+		}
 		tag.putInt("max_progress", maxProgress);
 		tag.putInt("status", status);
 		tag.put("essentia", essentiaContainer.toTag());
@@ -232,9 +253,22 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	@Override
 	public void fromTag(CompoundTag tag) {
 		super.fromTag(tag);
+		sleeping = false;
 		Inventories.fromTag(tag, items);
 		xp = tag.getInt("xp");
-		progress = tag.getInt("progress");
+		startTick = tag.contains("start_tick") ? tag.getLong("start_tick") : -1;
+		long saved = tag.contains("saved_tick") ? tag.getLong("saved_tick") : -1;
+		if (world == null) {
+			// Loaded with its chunk; the first tick catches up from here
+			savedTick = saved;
+		} else {
+			// Copied onto a machine already in a world, like a picked block being placed: keep the
+			// progress it had, but don't replay the time it spent as an item
+			savedTick = -1;
+			if (saved >= 0 && startTick >= 0) {
+				startTick += world.getTime() - saved;
+			}
+		}
 		maxProgress = tag.getInt("max_progress");
 		status = tag.getInt("status");
 		essentiaContainer = new EssentiaContainer(tag.getCompound("essentia"));
@@ -248,12 +282,7 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	@Override
 	public boolean isValidInvStack(int slot, ItemStack stack) {
 		if (slot == 1) {
-			Tag<Item> tag = world.getTagManager().items().get(ArtOfAlchemy.id("containers"));
-			if (tag == null) {
-				return false;
-			} else {
-				return tag.contains(stack.getItem());
-			}
+			return AoAItemTags.CONTAINERS.contains(stack);
 		} else {
 			return true;
 		}
@@ -261,7 +290,21 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	
 
 	@Override
-	public void tick() {
+	public long tick(long time) {
+		if (savedTick >= 0) {
+			catchUp(time);
+		}
+		if (startTick >= 0) {
+			// Worked right up to now
+			litUntil = time + LIT_HOLD;
+		}
+		if (sleeping) {
+			if (getWakeStamp() == sleepStamp) {
+				updateBlockState(time);
+				return getNextTick(time);
+			}
+			sleeping = false;
+		}
 		boolean dirty = false;
 		
 		if (!world.isClient()) {
@@ -274,8 +317,7 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 			} else if (inSlot.isEmpty()) {
 				updateStatus(3);
 			} else {
-				RecipeSynthesis recipe = world.getRecipeManager()
-						.getFirstMatch(AoARecipes.SYNTHESIS, this, world).orElse(null);
+				RecipeSynthesis recipe = recipes.getRecipe(this, world);
 				
 				if (canCraft(recipe)) {
 //					if (xp >= recipe.getXp(inSlot)) {
@@ -287,15 +329,12 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 				}
 			
 				if (isWorking) {
-					if (progress < maxProgress) {
-						if (!lit) {
-							world.setBlockState(pos, world.getBlockState(pos).with(BlockSynthesizer.LIT, true));
-							lit = true;
-						}
-						progress++;
+					if (startTick < 0) {
+						// The first tick counts, as it did when progress was incremented each tick
+						startTick = time - 1;
 					}
-					if (progress >= maxProgress) {
-						progress -= maxProgress;
+					if (time - startTick >= maxProgress) {
+						startTick += maxProgress;
 						doCraft(recipe);
 						AoANetworking.sendEssentiaPacket(world, pos, 0, essentiaContainer);
 						dirty = true;
@@ -304,21 +343,75 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 			}
 			
 			if (!isWorking) {
-				if (progress != 0) {
-					progress = 0;
-				}
-				if (lit) {
-					lit = false;
-					world.setBlockState(pos, world.getBlockState(pos).with(BlockSynthesizer.LIT, false));
-				}
+				startTick = -1;
 			}
 		}
 		
 		if (dirty) {
 			markDirty();
 		}
+		if (!world.isClient()) {
+			updateBlockState(time);
+			syncIfModified();
+			if (status != 0) {
+				sleeping = true;
+				sleepStamp = getWakeStamp();
+			}
+		}
+		return getNextTick(time);
+	}
+	
+	// Nothing changes before this unless an input does, which wakes the machine
+	private long getNextTick(long time) {
+		long next;
+		if (sleeping) {
+			next = time + AlchemyTickScheduler.SLEEP_RECHECK;
+		} else if (startTick >= 0) {
+			next = startTick + maxProgress;
+		} else {
+			next = time + 1;
+		}
+		if (startTick < 0 && litUntil > time) {
+			next = Math.min(next, litUntil);
+		}
+		return next;
+	}
+	
+	// Block state changes are collected here at the end of the tick and written once, only if they
+	// actually change anything
+	private void updateBlockState(long time) {
+		BlockState state = world.getBlockState(pos);
+		BlockState target = state.with(BlockSynthesizer.LIT, startTick >= 0 || time < litUntil);
+		if (target != state) {
+			world.setBlockState(pos, target);
+		}
 	}
 
+	// First tick after loading: runs the crafts that would have completed since the last save, up to
+	// AoAConfig.offlineCrafts, then resumes the current operation from where that leaves it
+	private void catchUp(long time) {
+		long saved = savedTick;
+		savedTick = -1;
+		if (startTick < 0 || saved >= time) {
+			return;
+		}
+		RecipeSynthesis recipe = recipes.getRecipe(this, world);
+		int crafts = 0;
+		while (crafts < AoAConfig.offlineCrafts && canCraft(recipe) && startTick + maxProgress <= time) {
+			startTick += maxProgress;
+			doCraft(recipe);
+			crafts++;
+			recipe = recipes.getRecipe(this, world);
+		}
+		if (AoAConfig.offlineCrafts == 0 || (crafts >= AoAConfig.offlineCrafts && startTick + maxProgress <= time)) {
+			// Out of allowance; the rest of the time away is skipped rather than produced
+			startTick += time - Math.max(saved, startTick);
+		}
+		if (crafts > 0) {
+			markDirty();
+		}
+	}
+	
 	@Override
 	public PropertyDelegate getPropertyDelegate() {
 		return delegate;
@@ -327,7 +420,43 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 	@Override
 	public void markDirty() {
 		super.markDirty();
-		if (!world.isClient()) {
+		modCount++;
+		wake();
+	}
+	
+	@Override
+	public long getInvModCount() {
+		return invModCount;
+	}
+	
+	@Override
+	public void onInvModified() {
+		invModCount++;
+		wake();
+	}
+	
+	// Increases whenever anything sent to the client changes
+	public long getModCount() {
+		return modCount + invModCount + essentiaContainer.getModCount();
+	}
+	
+	// Changes whenever the inventory, essentia, XP, status or recipes change
+	private long getWakeStamp() {
+		return getModCount() + AoARecipes.getGeneration();
+	}
+	
+	// Called on neighbor updates and whenever the contents change; also pulls the machine into the next tick
+	public void wake() {
+		sleeping = false;
+		if (world != null && !world.isClient()) {
+			AlchemyTickScheduler.get(world).wake(this);
+		}
+	}
+	
+	private void syncIfModified() {
+		long stamp = getModCount();
+		if (stamp != syncedModCount) {
+			syncedModCount = stamp;
 			sync();
 		}
 	}
@@ -339,7 +468,10 @@ public class BlockEntitySynthesizer extends BlockEntity implements ImplementedIn
 
 	@Override
 	public CompoundTag toClientTag(CompoundTag tag) {
-		return toTag(tag);
+		toTag(tag);
+		// Only meaningful to the server's catch-up
+		tag.remove("saved_tick");
+		return tag;
 	}
 	
 }
@@ -0,0 +1,35 @@
+package net.synthrose.artofalchemy.blockentity;
+
+// Machines keep the world tick an operation started at and derive progress from the clock. Container
+// properties are synced as shorts, so only the low 15 bits of that tick are sent; the client rebuilds
+// the full tick from its own world time. The client's clock can run a few ticks behind the server's,
+// so the tick is rebuilt as the nearest one to the client's time, which holds for any operation shorter
+// than 16384 ticks.
+public class SyncedTicks {
+	
+	private static final int MASK = 0x7FFF;
+	private static final int HALF = 0x4000;
+	
+	// -1 stands for no operation running
+	public static int encode(long tick) {
+		return (tick < 0) ? -1 : (int) (tick & MASK);
+	}
+	
+	// The tick nearest now with the given low bits, which may be slightly ahead of now
+	public static long decode(int value, long now) {
+		if (value < 0) {
+			return -1;
+		}
+		int delta = (int) ((value - now) & MASK);
+		return now + ((delta >= HALF) ? delta - (MASK + 1) : delta);
+	}
+	
+	// Ticks run since start, capped at length; 0 if nothing is running or it starts after now
+	public static int elapsed(long start, int length, long now) {
+		if (start < 0 || now <= start) {
+			return 0;
+		}
+		return (int) Math.min(now - start, length);
+	}
+	
+}
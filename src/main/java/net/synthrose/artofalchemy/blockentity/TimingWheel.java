@@ -0,0 +1,289 @@
+package net.synthrose.artofalchemy.blockentity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Hierarchical timing wheel over absolute tick numbers. Level 0 has one slot per tick for the next 256
+// ticks, level 1 one slot per 256 ticks and level 2 one slot per 16384 ticks; anything further out waits
+// in an overflow list. Slots of a coarser level are cascaded down when time reaches them, so advancing
+// one tick only touches the slot that is due. Rescheduling never searches a slot: each item carries a
+// version, and stale copies left in other slots are skipped when drained.
+//
+// Items due again on the very next tick skip the wheel and stay in a dense busy list, which is walked
+// in place every tick, so a machine that works continuously costs about as much as a plain list entry.
+// Level 0 and the busy lists are split by group, and each tick runs one group after another.
+public class TimingWheel<T> {
+	
+	private static final int SLOTS_0 = 256;
+	private static final int SLOTS_N = 64;
+	private static final int SHIFT_1 = 8;
+	private static final int SHIFT_2 = 14;
+	private static final int SHIFT_3 = 20;
+	// Beyond this many ticks behind, advancing tick by tick costs more than rebuilding the wheel
+	private static final long MAX_CATCH_UP = SLOTS_0;
+	
+	@FunctionalInterface
+	public interface Processor<T> {
+		// Returns the next tick the item is due, or a negative value to drop it
+		long process(T item, long time);
+	}
+	
+	private static final class Entry<T> {
+		
+		private final T item;
+		private final int group;
+		private long due;
+		private int version = 0;
+		private boolean busy = false;
+		private boolean running = false;
+		private boolean removed = false;
+		
+		private Entry(T item, int group) {
+			this.item = item;
+			this.group = group;
+		}
+	
+	}
+	
+	// Growable list of (entry, version) pairs
+	private static final class Slot<T> {
+		
+		private Entry<T>[] entries;
+		private int[] versions;
+		private int size;
+		
+		private Slot() {
+			clear();
+		}
+		
+		private void add(Entry<T> entry) {
+			if (size == entries.length) {
+				entries = Arrays.copyOf(entries, size * 2);
+				versions = Arrays.copyOf(versions, size * 2);
+			}
+			entries[size] = entry;
+			versions[size] = entry.version;
+			size++;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private void clear() {
+			entries = new Entry[4];
+			versions = new int[4];
+			size = 0;
+		}
+	
+	}
+	
+	private static final class Group<T> {
+		
+		private final Slot<T>[] slots = newLevel(SLOTS_0);
+		private final Slot<T> busy = new Slot<>();
+	
+	}
+	
+	private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+	private final List<Group<T>> groups = new ArrayList<>();
+	private final Slot<T>[] level1 = newLevel(SLOTS_N);
+	private final Slot<T>[] level2 = newLevel(SLOTS_N);
+	private final Slot<T> overflow = new Slot<>();
+	private long time;
+	
+	public TimingWheel(long time) {
+		this.time = time;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> Slot<T>[] newLevel(int size) {
+		Slot<T>[] level = new Slot[size];
+		for (int i = 0; i < size; i++) {
+			level[i] = new Slot<>();
+		}
+		return level;
+	}
+	
+	// Last tick processed
+	public long getTime() {
+		return time;
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	public boolean contains(T item) {
+		return entries.containsKey(item);
+	}
+	
+	// Adds the item, or moves it if already scheduled. Items due in the same tick run grouped by group.
+	public void schedule(T item, int group, long due) {
+		Entry<T> entry = entries.get(item);
+		if (entry == null) {
+			entry = new Entry<>(item, group);
+			entries.put(item, entry);
+			while (groups.size() <= group) {
+				groups.add(new Group<>());
+			}
+		}
+		insert(entry, Math.max(due, time + 1));
+	}
+	
+	// Moves the item earlier if it's due after the given tick; ignored while the item itself is running
+	public void wake(T item, long due) {
+		Entry<T> entry = entries.get(item);
+		if (entry != null && !entry.running && entry.due > Math.max(due, time + 1)) {
+			insert(entry, Math.max(due, time + 1));
+		}
+	}
+	
+	public void remove(T item) {
+		Entry<T> entry = entries.remove(item);
+		if (entry != null) {
+			entry.version++;
+			entry.busy = false;
+			entry.removed = true;
+		}
+	}
+	
+	private void insert(Entry<T> entry, long due) {
+		entry.version++;
+		entry.busy = false;
+		entry.due = due;
+		place(entry);
+	}
+	
+	private void place(Entry<T> entry) {
+		long due = entry.due;
+		if (due - time < SLOTS_0) {
+			groups.get(entry.group).slots[(int) (due & (SLOTS_0 - 1))].add(entry);
+		} else if ((due >> SHIFT_1) - (time >> SHIFT_1) <= SLOTS_N) {
+			level1[(int) ((due >> SHIFT_1) & (SLOTS_N - 1))].add(entry);
+		} else if ((due >> SHIFT_2) - (time >> SHIFT_2) <= SLOTS_N) {
+			level2[(int) ((due >> SHIFT_2) & (SLOTS_N - 1))].add(entry);
+		} else {
+			overflow.add(entry);
+		}
+	}
+	
+	// Processes every item due up to and including the given tick
+	public void advance(long now, Processor<T> processor) {
+		if (now - time > MAX_CATCH_UP) {
+			rebase(now - 1);
+		}
+		while (time < now) {
+			time++;
+			if ((time & ((1L << SHIFT_3) - 1)) == 0) {
+				cascade(overflow);
+			}
+			if ((time & ((1L << SHIFT_2) - 1)) == 0) {
+				cascade(level2[(int) ((time >> SHIFT_2) & (SLOTS_N - 1))]);
+			}
+			if ((time & ((1L << SHIFT_1) - 1)) == 0) {
+				cascade(level1[(int) ((time >> SHIFT_1) & (SLOTS_N - 1))]);
+			}
+			int index = (int) (time & (SLOTS_0 - 1));
+			for (int i = 0; i < groups.size(); i++) {
+				Group<T> group = groups.get(i);
+				runBusy(group.busy, processor);
+				run(group.slots[index], group.busy, processor);
+			}
+		}
+	}
+	
+	private void cascade(Slot<T> slot) {
+		Entry<T>[] drained = slot.entries;
+		int[] versions = slot.versions;
+		int size = slot.size;
+		slot.clear();
+		for (int i = 0; i < size; i++) {
+			if (drained[i].version == versions[i]) {
+				place(drained[i]);
+			}
+		}
+	}
+	
+	// Runs last tick's busy items, compacting out any that are now due later or were moved elsewhere
+	private void runBusy(Slot<T> busy, Processor<T> processor) {
+		int kept = 0;
+		for (int i = 0; i < busy.size; i++) {
+			Entry<T> entry = busy.entries[i];
+			busy.entries[i] = null;
+			if (!entry.busy) {
+				continue;
+			}
+			long next = process(entry, processor);
+			if (next < 0) {
+				remove(entry.item);
+			} else if (!entry.busy) {
+				// Dropped or rescheduled while it ran
+				continue;
+			} else if (next <= time + 1) {
+				entry.due = time + 1;
+				busy.entries[kept] = entry;
+				busy.versions[kept] = entry.version;
+				kept++;
+			} else {
+				insert(entry, next);
+			}
+		}
+		busy.size = kept;
+	}
+	
+	// Nothing due later than this tick is ever added to its own slot, so the slot can be walked in place
+	private void run(Slot<T> slot, Slot<T> busy, Processor<T> processor) {
+		for (int i = 0; i < slot.size; i++) {
+			Entry<T> entry = slot.entries[i];
+			slot.entries[i] = null;
+			if (entry.version != slot.versions[i] || entry.due != time) {
+				continue;
+			}
+			long next = process(entry, processor);
+			if (next < 0) {
+				remove(entry.item);
+			} else if (entry.version != slot.versions[i]) {
+				// Dropped or rescheduled while it ran
+				continue;
+			} else if (next <= time + 1) {
+				entry.version++;
+				entry.busy = true;
+				entry.due = time + 1;
+				busy.add(entry);
+			} else {
+				insert(entry, next);
+			}
+		}
+		slot.size = 0;
+	}
+	
+	private long process(Entry<T> entry, Processor<T> processor) {
+		entry.running = true;
+		long next = processor.process(entry.item, time);
+		entry.running = false;
+		return next;
+	}
+	
+	// Reschedules everything relative to a new current tick, keeping each item's due tick where possible
+	private void rebase(long now) {
+		time = now;
+		for (Group<T> group : groups) {
+			for (Slot<T> slot : group.slots) {
+				slot.clear();
+			}
+			group.busy.clear();
+		}
+		for (Slot<T> slot : level1) {
+			slot.clear();
+		}
+		for (Slot<T> slot : level2) {
+			slot.clear();
+		}
+		overflow.clear();
+		for (Entry<T> entry : entries.values()) {
+			insert(entry, Math.max(entry.due, now + 1));
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+package net.synthrose.artofalchemy.command;
+
+import java.util.List;
+import java.util.function.Function;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.context.CommandContext;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.fabricmc.fabric.api.registry.CommandRegistry;
+import net.minecraft.command.arguments.IdentifierArgumentType;
+import net.minecraft.recipe.Ingredient;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.CommandSource;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.LiteralText;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.registry.Registry;
+import net.synthrose.artofalchemy.ArtOfAlchemy;
+import net.synthrose.artofalchemy.essentia.Essentia;
+import net.synthrose.artofalchemy.essentia.EssentiaStack;
+import net.synthrose.artofalchemy.essentia.RegistryEssentia;
+import net.synthrose.artofalchemy.recipe.EssentiaIndex;
+import net.synthrose.artofalchemy.recipe.RecipeDissolution;
+import net.synthrose.artofalchemy.recipe.RecipeStats;
+import net.synthrose.artofalchemy.recipe.RecipeSynthesis;
+
+public class AoACommands {
+	
+	private static final int MAX_LINES = 10;
+	
+	public static void registerCommands() {
+		CommandRegistry.INSTANCE.register(false, AoACommands::register);
+	}
+	
+	private static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal(ArtOfAlchemy.MOD_ID)
+			.requires((source) -> source.hasPermissionLevel(2))
+			.then(CommandManager.literal("stats")
+				.then(CommandManager.literal("recipes")
+					.executes(AoACommands::showRecipeStats)
+					.then(CommandManager.literal("reset")
+						.executes(AoACommands::resetRecipeStats))))
+			.then(CommandManager.literal("essentia")
+				.then(CommandManager.argument("essentia", IdentifierArgumentType.identifier())
+					.suggests((context, builder) ->
+						CommandSource.suggestIdentifiers(RegistryEssentia.INSTANCE.getIds(), builder))
+					.then(CommandManager.literal("sources")
+						.executes(AoACommands::showSources))
+					.then(CommandManager.literal("uses")
+						.executes(AoACommands::showUses)))));
+	}
+	
+	private static int showRecipeStats(CommandContext<ServerCommandSource> context) {
+		for (RecipeStats stats : RecipeStats.getAll()) {
+			context.getSource().sendFeedback(new LiteralText(stats.summarize()), false);
+		}
+		return RecipeStats.getAll().size();
+	}
+	
+	private static int resetRecipeStats(CommandContext<ServerCommandSource> context) {
+		RecipeStats.getAll().forEach(RecipeStats::reset);
+		context.getSource().sendFeedback(new LiteralText("Recipe lookup statistics reset"), true);
+		return 1;
+	}
+	
+	private static int showSources(CommandContext<ServerCommandSource> context) {
+		Essentia essentia = getEssentia(context);
+		if (essentia == null) {
+			return 0;
+		}
+		List<RecipeDissolution> recipes = EssentiaIndex.get(context.getSource().getWorld()).getProducers(essentia);
+		return list(context, essentia, recipes, RecipeDissolution::getInput, RecipeDissolution::getEssentia);
+	}
+	
+	private static int showUses(CommandContext<ServerCommandSource> context) {
+		Essentia essentia = getEssentia(context);
+		if (essentia == null) {
+			return 0;
+		}
+		List<RecipeSynthesis> recipes = EssentiaIndex.get(context.getSource().getWorld()).getConsumers(essentia);
+		return list(context, essentia, recipes, RecipeSynthesis::getTarget, RecipeSynthesis::getEssentia);
+	}
+	
+	private static Essentia getEssentia(CommandContext<ServerCommandSource> context) {
+		Identifier id = IdentifierArgumentType.getIdentifier(context, "essentia");
+		Essentia essentia = RegistryEssentia.INSTANCE.get(id);
+		if (essentia == null) {
+			context.getSource().sendError(new LiteralText("Unknown essentia: " + id));
+		}
+		return essentia;
+	}
+	
+	// One line per recipe: the item it's keyed on and the amount of the essentia per item
+	private static <R> int list(CommandContext<ServerCommandSource> context, Essentia essentia, List<R> recipes,
+			Function<R, Ingredient> key, Function<R, EssentiaStack> amounts) {
+		ServerCommandSource source = context.getSource();
+		source.sendFeedback(new LiteralText(recipes.size() + " recipes for "
+			+ RegistryEssentia.INSTANCE.getId(essentia)), false);
+		for (int i = 0; i < recipes.size() && i < MAX_LINES; i++) {
+			R recipe = recipes.get(i);
+			source.sendFeedback(new LiteralText("  " + describe(key.apply(recipe)) + ": "
+				+ amounts.apply(recipe).getCount(essentia)), false);
+		}
+		if (recipes.size() > MAX_LINES) {
+			source.sendFeedback(new LiteralText("  ..."), false);
+		}
+		return recipes.size();
+	}
+	
+	private static String describe(Ingredient ingredient) {
+		IntList ids = ingredient.getIds();
+		if (ids.isEmpty()) {
+			return "?";
+		}
+		String name = Registry.ITEM.getId(Registry.ITEM.get(ids.getInt(0))).toString();
+		return (ids.size() > 1) ? name + " (+" + (ids.size() - 1) + ")" : name;
+	}
+	
+}
@@ -0,0 +1,647 @@
+package net.synthrose.artofalchemy.essentia;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.minecraft.nbt.CompoundTag;
+
+// Thread-safe counterpart to EssentiaContainer, for containers that are read or moved off the server thread.
+// Single-type operations hold the shared lock and update per-essentia atomic counters, so they never block
+// each other; multi-type operations and snapshots hold the exclusive lock and see a consistent state.
+// Plain block entities should keep using EssentiaContainer.
+public class ConcurrentEssentiaContainer implements EssentiaStorage {
+
+	private static final AtomicLong ORDER = new AtomicLong();
+
+	// Lock acquisition order between two containers, so paired operations cannot deadlock
+	private final long order = ORDER.getAndIncrement();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile AtomicIntegerArray counts;
+	private final AtomicInteger total = new AtomicInteger();
+	private final AtomicInteger reserved = new AtomicInteger();
+	private volatile long[] whitelist;
+	private volatile Integer capacity = null;
+	private volatile boolean input = true;
+	private volatile boolean output = true;
+	private volatile boolean infinite = false;
+	private volatile boolean whitelistEnabled = false;
+
+	public ConcurrentEssentiaContainer() {
+		int bound = RegistryEssentia.INSTANCE.getRawIdBound();
+		counts = new AtomicIntegerArray(bound);
+		whitelist = new long[EssentiaStack.words(bound)];
+	}
+
+	public ConcurrentEssentiaContainer(EssentiaContainer container) {
+		this();
+		load(container);
+	}
+
+	public ConcurrentEssentiaContainer(CompoundTag tag) {
+		this(new EssentiaContainer(tag));
+	}
+
+	@Override
+	public int getCount(Essentia essentia) {
+		return getCount(EssentiaStack.rawId(essentia));
+	}
+
+	int getCount(int id) {
+		AtomicIntegerArray counts = this.counts;
+		return (id >= 0 && id < counts.length()) ? counts.get(id) : 0;
+	}
+
+	@Override
+	public int getCount() {
+		return total.get();
+	}
+
+	@Override
+	public int getTypeCount() {
+		AtomicIntegerArray counts = this.counts;
+		int types = 0;
+		for (int id = 0; id < counts.length(); id++) {
+			if (counts.get(id) != 0) {
+				types++;
+			}
+		}
+		return types;
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public ConcurrentEssentiaContainer setCapacity(int capacity) {
+		this.capacity = capacity;
+		return this;
+	}
+
+	public ConcurrentEssentiaContainer setUnlimitedCapacity() {
+		this.capacity = null;
+		return this;
+	}
+
+	@Override
+	public boolean hasUnlimitedCapacity() {
+		return capacity == null;
+	}
+
+	@Override
+	public boolean isInput() {
+		return input;
+	}
+
+	public ConcurrentEssentiaContainer setInput(boolean input) {
+		this.input = input;
+		return this;
+	}
+
+	@Override
+	public boolean isOutput() {
+		return output;
+	}
+
+	public ConcurrentEssentiaContainer setOutput(boolean output) {
+		this.output = output;
+		return this;
+	}
+
+	@Override
+	public boolean isInfinite() {
+		return infinite;
+	}
+
+	public ConcurrentEssentiaContainer setInfinite(boolean infinite) {
+		this.infinite = infinite;
+		return this;
+	}
+
+	@Override
+	public boolean isWhitelistEnabled() {
+		return whitelistEnabled;
+	}
+
+	public ConcurrentEssentiaContainer setWhitelistEnabled(boolean whitelistEnabled) {
+		this.whitelistEnabled = whitelistEnabled;
+		return this;
+	}
+
+	// The whitelist is copy-on-write, so readers only ever see a complete bitmask
+	public ConcurrentEssentiaContainer whitelist(Essentia essentia) {
+		int id = EssentiaStack.rawId(essentia);
+		if (id >= 0) {
+			Lock exclusive = lock.writeLock();
+			exclusive.lock();
+			try {
+				whitelist = EssentiaStack.setBit(whitelist.clone(), id);
+			} finally {
+				exclusive.unlock();
+			}
+		}
+		return this;
+	}
+
+	public ConcurrentEssentiaContainer blacklist(Essentia essentia) {
+		int id = EssentiaStack.rawId(essentia);
+		Lock exclusive = lock.writeLock();
+		exclusive.lock();
+		try {
+			long[] copy = whitelist.clone();
+			EssentiaStack.clearBit(copy, id);
+			whitelist = copy;
+		} finally {
+			exclusive.unlock();
+		}
+		return this;
+	}
+
+	public ConcurrentEssentiaContainer clearWhitelist() {
+		whitelist = new long[whitelist.length];
+		return this;
+	}
+
+	@Override
+	public boolean whitelisted(Essentia essentia) {
+		return whitelisted(EssentiaStack.rawId(essentia));
+	}
+
+	boolean whitelisted(int id) {
+		return (!whitelistEnabled || EssentiaStack.testBit(whitelist, id));
+	}
+
+	@Override
+	public boolean whitelisted(EssentiaStack query) {
+		return (!whitelistEnabled || query.isWithin(whitelist));
+	}
+
+	// Room left before hitting capacity; Integer.MAX_VALUE when capacity is unlimited
+	@Override
+	public int getFreeCapacity() {
+		Integer capacity = this.capacity;
+		if (capacity != null) {
+			return Math.max(0, capacity - total.get() - reserved.get());
+		} else {
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return total.get() == 0;
+	}
+
+	@Override
+	public boolean isFull() {
+		return getFreeCapacity() <= 0;
+	}
+
+	// Adds up to the given amount of a single essentia, returning how much was actually added
+	public int add(Essentia essentia, int amount) {
+		int id = EssentiaStack.rawId(essentia);
+		if (id < 0 || amount <= 0 || !whitelisted(id)) {
+			return 0;
+		}
+		if (infinite) {
+			return amount;
+		}
+		ensureSize(id);
+		Lock shared = lock.readLock();
+		shared.lock();
+		try {
+			int added = claimRoom(amount);
+			if (added > 0) {
+				counts.addAndGet(id, added);
+			}
+			return added;
+		} finally {
+			shared.unlock();
+		}
+	}
+
+	// Removes up to the given amount of a single essentia, returning how much was actually removed
+	public int subtract(Essentia essentia, int amount) {
+		int id = EssentiaStack.rawId(essentia);
+		if (id < 0 || amount <= 0 || !whitelisted(id)) {
+			return 0;
+		}
+		if (infinite) {
+			return amount;
+		}
+		Lock shared = lock.readLock();
+		shared.lock();
+		try {
+			AtomicIntegerArray counts = this.counts;
+			if (id >= counts.length()) {
+				return 0;
+			}
+			int current;
+			int removed;
+			do {
+				current = counts.get(id);
+				removed = Math.min(current, amount);
+				if (removed <= 0) {
+					return 0;
+				}
+			} while (!counts.compareAndSet(id, current, current - removed));
+			total.addAndGet(-removed);
+			return removed;
+		} finally {
+			shared.unlock();
+		}
+	}
+
+	// Atomically takes up to the given amount out of the free capacity
+	private int claimRoom(int amount) {
+		int current;
+		int claimed;
+		do {
+			current = total.get();
+			Integer capacity = this.capacity;
+			claimed = (capacity == null) ? amount : Math.min(amount, capacity - current - reserved.get());
+			if (claimed <= 0) {
+				return 0;
+			}
+		} while (!total.compareAndSet(current, current + claimed));
+		return claimed;
+	}
+
+	private void ensureSize(int id) {
+		if (id >= counts.length()) {
+			Lock exclusive = lock.writeLock();
+			exclusive.lock();
+			try {
+				growUnlocked(id);
+			} finally {
+				exclusive.unlock();
+			}
+		}
+	}
+
+	@Override
+	public boolean contains(EssentiaStack query) {
+		Lock shared = lock.readLock();
+		shared.lock();
+		try {
+			return containsUnlocked(query);
+		} finally {
+			shared.unlock();
+		}
+	}
+
+	private boolean containsUnlocked(EssentiaStack query) {
+		for (int id = query.nextId(0); id >= 0; id = query.nextId(id + 1)) {
+			if (getCount(id) < query.getCount(id)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean canAcceptIgnoreIO(EssentiaStack query) {
+		return whitelisted(query) && query.getCount() <= getFreeCapacity();
+	}
+
+	@Override
+	public boolean canAccept(EssentiaStack query) {
+		return input && canAcceptIgnoreIO(query);
+	}
+
+	@Override
+	public boolean canProvideIgnoreIO(EssentiaStack query) {
+		return whitelisted(query) && (infinite || contains(query));
+	}
+
+	@Override
+	public boolean canProvide(EssentiaStack query) {
+		return output && canProvideIgnoreIO(query);
+	}
+
+	// Adds the whole stack or nothing
+	@Override
+	public boolean addEssentia(EssentiaStack stack) {
+		Lock exclusive = lock.writeLock();
+		exclusive.lock();
+		try {
+			if (!canAcceptIgnoreIO(stack)) {
+				return false;
+			}
+			credit(stack);
+			return true;
+		} finally {
+			exclusive.unlock();
+		}
+	}
+
+	// Removes the whole stack or nothing
+	@Override
+	public boolean subtractEssentia(EssentiaStack stack) {
+		Lock exclusive = lock.writeLock();
+		exclusive.lock();
+		try {
+			if (!whitelisted(stack) || !(infinite || containsUnlocked(stack))) {
+				return false;
+			}
+			debit(stack);
+			return true;
+		} finally {
+			exclusive.unlock();
+		}
+	}
+
+	// Callers must hold the exclusive lock
+	private void credit(EssentiaStack stack) {
+		if (!infinite) {
+			for (int id = stack.nextId(0); id >= 0; id = stack.nextId(id + 1)) {
+				growUnlocked(id);
+				counts.addAndGet(id, stack.getCount(id));
+			}
+			total.addAndGet(stack.getCount());
+		}
+	}
+
+	// Callers must hold the exclusive lock
+	private void debit(EssentiaStack stack) {
+		if (!infinite) {
+			for (int id = stack.nextId(0); id >= 0; id = stack.nextId(id + 1)) {
+				counts.addAndGet(id, -stack.getCount(id));
+			}
+			total.addAndGet(-stack.getCount());
+		}
+	}
+
+	private void growUnlocked(int id) {
+		AtomicIntegerArray old = counts;
+		if (id >= old.length()) {
+			AtomicIntegerArray grown = new AtomicIntegerArray(Math.max(id + 1, RegistryEssentia.INSTANCE.getRawIdBound()));
+			for (int i = 0; i < old.length(); i++) {
+				grown.set(i, old.get(i));
+			}
+			counts = grown;
+		}
+	}
+
+	// Clears any essentia in violation of the whitelist; returns true if any essentia was deleted
+	@Override
+	public boolean enforceWhitelist() {
+		if (!whitelistEnabled) {
+			return false;
+		}
+		Lock exclusive = lock.writeLock();
+		exclusive.lock();
+		try {
+			boolean removed = false;
+			for (int id = 0; id < counts.length(); id++) {
+				int count = counts.get(id);
+				if (count != 0 && !EssentiaStack.testBit(whitelist, id)) {
+					counts.set(id, 0);
+					total.addAndGet(-count);
+					removed = true;
+				}
+			}
+			return removed;
+		} finally {
+			exclusive.unlock();
+		}
+	}
+
+	@Override
+	public boolean emptyContents() {
+		Lock exclusive = lock.writeLock();
+		exclusive.lock();
+		try {
+			if (total.get() == 0) {
+				return false;
+			}
+			counts = new AtomicIntegerArray(counts.length());
+			total.set(0);
+			return true;
+		} finally {
+			exclusive.unlock();
+		}
+	}
+
+	// Push an entire stack to another container, failing if any essentia couldn't transfer
+	public boolean pushEntireStack(ConcurrentEssentiaContainer other, EssentiaStack stack) {
+		Reservation reservation = reserve(other, stack);
+		return reservation != null && reservation.commit();
+	}
+
+	// Pull an entire stack from another container, failing if any essentia couldn't transfer
+	public boolean pullEntireStack(ConcurrentEssentiaContainer other, EssentiaStack stack) {
+		return other.pushEntireStack(this, stack);
+	}
+
+	// Push as much as possible of a stack to another container, returning the essentia transferred
+	public EssentiaStack pushStack(ConcurrentEssentiaContainer other, EssentiaStack stack) {
+		EssentiaStack transferred = new EssentiaStack();
+		if (!this.output || !other.input || other == this) {
+			return transferred;
+		}
+		lockBoth(this, other);
+		try {
+			int room = other.getFreeCapacity();
+			for (int id = stack.nextId(0); id >= 0 && room > 0; id = stack.nextId(id + 1)) {
+				if (this.whitelisted(id) && other.whitelisted(id)) {
+					int transferAmt = Math.min(stack.getCount(id), room);
+					if (!this.infinite) {
+						transferAmt = Math.min(transferAmt, this.getCount(id));
+					}
+					if (transferAmt > 0) {
+						transferred.set(id, transferAmt);
+						room -= transferAmt;
+					}
+				}
+			}
+			this.debit(transferred);
+			other.credit(transferred);
+		} finally {
+			unlockBoth(this, other);
+		}
+		return transferred;
+	}
+
+	// Pull as much as possible of a stack from another container, returning the essentia transferred
+	public EssentiaStack pullStack(ConcurrentEssentiaContainer other, EssentiaStack stack) {
+		return other.pushStack(this, stack);
+	}
+
+	// Atomically takes the whole stack out of this container and sets aside room for it in the target.
+	// Returns null if either side can't take part; otherwise the reservation must be committed or cancelled.
+	public Reservation reserve(ConcurrentEssentiaContainer target, EssentiaStack stack) {
+		if (target == this) {
+			return null;
+		}
+		EssentiaStack amounts = new EssentiaStack(stack);
+		lockBoth(this, target);
+		try {
+			if (!this.canProvideUnlocked(amounts) || !target.canAccept(amounts)) {
+				return null;
+			}
+			this.debit(amounts);
+			if (!target.infinite) {
+				target.reserved.addAndGet(amounts.getCount());
+			}
+		} finally {
+			unlockBoth(this, target);
+		}
+		return new Reservation(this, target, amounts);
+	}
+
+	private boolean canProvideUnlocked(EssentiaStack query) {
+		return output && whitelisted(query) && (infinite || containsUnlocked(query));
+	}
+
+	private static void lockBoth(ConcurrentEssentiaContainer a, ConcurrentEssentiaContainer b) {
+		if (a.order < b.order) {
+			a.lock.writeLock().lock();
+			b.lock.writeLock().lock();
+		} else {
+			b.lock.writeLock().lock();
+			a.lock.writeLock().lock();
+		}
+	}
+
+	private static void unlockBoth(ConcurrentEssentiaContainer a, ConcurrentEssentiaContainer b) {
+		a.lock.writeLock().unlock();
+		b.lock.writeLock().unlock();
+	}
+
+	// Consistent copy of the whole container, e.g. for encoding a packet off the server thread
+	public EssentiaContainer snapshot() {
+		EssentiaContainer copy = new EssentiaContainer();
+		Lock exclusive = lock.writeLock();
+		exclusive.lock();
+		try {
+			AtomicIntegerArray counts = this.counts;
+			for (int id = 0; id < counts.length(); id++) {
+				int count = counts.get(id);
+				if (count != 0) {
+					copy.getContents().set(id, count);
+				}
+			}
+			long[] whitelist = this.whitelist;
+			for (int id = EssentiaStack.nextBit(whitelist, 0); id >= 0; id = EssentiaStack.nextBit(whitelist, id + 1)) {
+				copy.whitelist(EssentiaStack.byRawId(id));
+			}
+			Integer capacity = this.capacity;
+			if (capacity == null) {
+				copy.setUnlimitedCapacity();
+			} else {
+				copy.setCapacity(capacity);
+			}
+			copy.setInput(input).setOutput(output).setInfinite(infinite).setWhitelistEnabled(whitelistEnabled);
+		} finally {
+			exclusive.unlock();
+		}
+		return copy;
+	}
+
+	// Frozen copy; writes have to go through the container's own methods
+	@Override
+	public EssentiaStack getContents() {
+		return snapshot().getContents().freeze();
+	}
+
+	@Override
+	public CompoundTag toTag() {
+		return snapshot().toTag();
+	}
+
+	// Replaces the whole state of this container with a copy of a plain container
+	public ConcurrentEssentiaContainer load(EssentiaContainer container) {
+		Lock exclusive = lock.writeLock();
+		exclusive.lock();
+		try {
+			EssentiaStack contents = container.getContents();
+			AtomicIntegerArray loaded = new AtomicIntegerArray(Math.max(counts.length(), RegistryEssentia.INSTANCE.getRawIdBound()));
+			for (int id = contents.nextId(0); id >= 0; id = contents.nextId(id + 1)) {
+				loaded.set(id, contents.getCount(id));
+			}
+			counts = loaded;
+			total.set(contents.getCount());
+			long[] copy = new long[whitelist.length];
+			for (Essentia essentia : container.getWhitelist()) {
+				copy = EssentiaStack.setBit(copy, EssentiaStack.rawId(essentia));
+			}
+			whitelist = copy;
+			capacity = container.hasUnlimitedCapacity() ? null : container.getCapacity();
+			input = container.isInput();
+			output = container.isOutput();
+			infinite = container.isInfinite();
+			whitelistEnabled = container.isWhitelistEnabled();
+		} finally {
+			exclusive.unlock();
+		}
+		return this;
+	}
+
+	// Essentia set aside by reserve(); already taken from the source, with room held in the target
+	public static class Reservation {
+
+		private final ConcurrentEssentiaContainer from;
+		private final ConcurrentEssentiaContainer to;
+		private final EssentiaStack amounts;
+		private boolean done = false;
+
+		private Reservation(ConcurrentEssentiaContainer from, ConcurrentEssentiaContainer to, EssentiaStack amounts) {
+			this.from = from;
+			this.to = to;
+			this.amounts = amounts;
+		}
+
+		public EssentiaStack getAmounts() {
+			return new EssentiaStack(amounts);
+		}
+
+		// Delivers the reserved essentia; returns false if the reservation was already settled
+		public synchronized boolean commit() {
+			if (done) {
+				return false;
+			}
+			done = true;
+			Lock exclusive = to.lock.writeLock();
+			exclusive.lock();
+			try {
+				if (!to.infinite) {
+					to.reserved.addAndGet(-amounts.getCount());
+				}
+				to.credit(amounts);
+			} finally {
+				exclusive.unlock();
+			}
+			return true;
+		}
+
+		// Returns the reserved essentia to the source and frees the held room
+		public synchronized void cancel() {
+			if (done) {
+				return;
+			}
+			done = true;
+			Lock exclusive = to.lock.writeLock();
+			exclusive.lock();
+			try {
+				if (!to.infinite) {
+					to.reserved.addAndGet(-amounts.getCount());
+				}
+			} finally {
+				exclusive.unlock();
+			}
+			exclusive = from.lock.writeLock();
+			exclusive.lock();
+			try {
+				from.credit(amounts);
+			} finally {
+				exclusive.unlock();
+			}
+		}
+
+	}
+
+}
@@ -1,7 +1,9 @@
 package net.synthrose.artofalchemy.essentia;
 
-import java.util.HashSet;
-import java.util.Map.Entry;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import blue.endless.jankson.annotation.Nullable;
 
@@ -11,17 +13,31 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.StringTag;
-import net.minecraft.util.Identifier;
 
-public class EssentiaContainer {
+public class EssentiaContainer implements EssentiaStorage {
+	
+	// Version written by toTag(); tags without a version are the original verbose format
+	public static final int FORMAT_VERSION = 2;
+	private static final int FLAG_INPUT = 1;
+	private static final int FLAG_OUTPUT = 2;
+	private static final int FLAG_INFINITE = 4;
+	private static final int FLAG_WHITELIST_ENABLED = 8;
+	private static final int DEFAULT_FLAGS = FLAG_INPUT | FLAG_OUTPUT;
 
 	private EssentiaStack contents = new EssentiaStack();
-	private Set<Essentia> whitelist = new HashSet<>();
+	// Whitelisted essentia as a bitmask over raw ids, so a whole stack can be checked with a few ANDs
+	private long[] whitelist = new long[EssentiaStack.words(RegistryEssentia.INSTANCE.getRawIdBound())];
+	private Set<Essentia> whitelistView;
 	private Integer capacity = null;
 	private boolean input = true;
 	private boolean output = true;
 	private boolean infinite = false;
 	private boolean whitelistEnabled = false;
+	// Capacity held back for essentia an EssentiaTransaction has reserved but not yet delivered. Not
+	// saved, since transactions settle within the tick they reserve in.
+	private int reserved = 0;
+	// Bumped when settings or the whitelist change; the contents keep their own count
+	private long modCount = 0;
 	
 	public EssentiaContainer() {
 		
@@ -29,38 +45,75 @@ public class EssentiaContainer {
 	
 	public EssentiaContainer(CompoundTag tag) {
 		if (tag != null) {
-			if (tag.contains("essentia")) {
-				CompoundTag essentiaTag = tag.getCompound("essentia");
-				this.setContents(new EssentiaStack(essentiaTag));
+			if (tag.contains("v")) {
+				fromCompactTag(tag);
+			} else {
+				fromLegacyTag(tag);
 			}
-			if (tag.contains("whitelist")) {
-				whitelistEnabled = true;
-				ListTag list = tag.getList("whitelist", 8);
-				for (int i = 0; i < list.size(); i++) {
-					Identifier id = new Identifier(list.getString(i));
-					this.whitelist(RegistryEssentia.INSTANCE.get(id));
-				}
+		}
+	}
+	
+	// Compact format: a palette of essentia ids, whitelisted ones first, with amounts in a parallel int array
+	private void fromCompactTag(CompoundTag tag) {
+		ListTag palette = tag.getList("p", 8);
+		int[] amounts = tag.getIntArray("a");
+		int whitelisted = tag.getInt("w");
+		for (int i = 0; i < palette.size(); i++) {
+			Essentia essentia = RegistryEssentia.INSTANCE.getByName(palette.getString(i));
+			int id = EssentiaStack.rawId(essentia);
+			if (id < 0) {
+				continue;
 			}
-			if (tag.contains("capacity")) {
-				if (tag.getString("capacity").equals("unlimited")) {
-					this.setUnlimitedCapacity();
-				} else {
-					this.setCapacity(tag.getInt("capacity"));
-				}
-				
+			if (i < amounts.length) {
+				contents.set(id, amounts[i]);
 			}
-			if (tag.contains("infinite")) {
-				this.setInfinite(tag.getBoolean("infinite"));
+			if (i < whitelisted) {
+				whitelist = EssentiaStack.setBit(whitelist, id);
 			}
-			if (tag.contains("whitelist_enabled")) {
-				this.setWhitelistEnabled(tag.getBoolean("whitelist_enabled"));
+		}
+		int flags = tag.contains("f") ? tag.getByte("f") : DEFAULT_FLAGS;
+		input = (flags & FLAG_INPUT) != 0;
+		output = (flags & FLAG_OUTPUT) != 0;
+		infinite = (flags & FLAG_INFINITE) != 0;
+		whitelistEnabled = (flags & FLAG_WHITELIST_ENABLED) != 0;
+		if (tag.contains("c")) {
+			setCapacity(tag.getInt("c"));
+		} else {
+			setUnlimitedCapacity();
+		}
+	}
+	
+	private void fromLegacyTag(CompoundTag tag) {
+		if (tag.contains("essentia")) {
+			CompoundTag essentiaTag = tag.getCompound("essentia");
+			this.setContents(new EssentiaStack(essentiaTag));
+		}
+		if (tag.contains("whitelist")) {
+			whitelistEnabled = true;
+			ListTag list = tag.getList("whitelist", 8);
+			for (int i = 0; i < list.size(); i++) {
+				this.whitelist(RegistryEssentia.INSTANCE.getByName(list.getString(i)));
 			}
-			if (tag.contains("input")) {
-				this.setInput(tag.getBoolean("input"));
+		}
+		if (tag.contains("capacity")) {
+			if (tag.getString("capacity").equals("unlimited")) {
+				this.setUnlimitedCapacity();
+			} else {
+				this.setCapacity(tag.getInt("capacity"));
 			}
-			if (tag.contains("output")) {
-				this.setOutput(tag.getBoolean("output"));
-			}	
+			
+		}
+		if (tag.contains("infinite")) {
+			this.setInfinite(tag.getBoolean("infinite"));
+		}
+		if (tag.contains("whitelist_enabled")) {
+			this.setWhitelistEnabled(tag.getBoolean("whitelist_enabled"));
+		}
+		if (tag.contains("input")) {
+			this.setInput(tag.getBoolean("input"));
+		}
+		if (tag.contains("output")) {
+			this.setOutput(tag.getBoolean("output"));
 		}
 	}
 	
@@ -87,6 +140,12 @@ public class EssentiaContainer {
 		return item;
 	}
 	
+	// Increases every time the contents, whitelist or settings change
+	public long getModCount() {
+		return modCount + contents.getModCount();
+	}
+	
+	@Override
 	public EssentiaStack getContents() {
 		return contents;
 	}
@@ -99,89 +158,121 @@ public class EssentiaContainer {
 		return this;
 	}
 	
+	// Live view of the whitelist; adding or removing through it whitelists or blacklists
 	public Set<Essentia> getWhitelist() {
-		return whitelist;
+		if (whitelistView == null) {
+			whitelistView = new WhitelistView();
+		}
+		return whitelistView;
 	}
 	
 	public EssentiaContainer setWhitelist(Set<Essentia> whitelist) {
-		this.whitelist.clear();
+		clearWhitelist();
 		if (whitelist != null) {
-			this.whitelist.addAll(whitelist);
+			for (Essentia essentia : whitelist) {
+				whitelist(essentia);
+			}
+		}
+		return this;
+	}
+	
+	public EssentiaContainer clearWhitelist() {
+		for (int word = 0; word < whitelist.length; word++) {
+			whitelist[word] = 0L;
 		}
+		modCount++;
 		return this;
 	}
 	
+	@Override
 	public int getCapacity() {
 		return capacity;
 	}
 
 	public EssentiaContainer setCapacity(int capacity) {
 		this.capacity = capacity;
+		modCount++;
 		return this;
 	}
 	
 	public EssentiaContainer setUnlimitedCapacity() {
 		this.capacity = null;
+		modCount++;
 		return this;
 	}
 	
+	@Override
 	public boolean hasUnlimitedCapacity() {
 		return this.capacity == null;
 	}
 
+	@Override
 	public boolean isInput() {
 		return input;
 	}
 	
 	public EssentiaContainer setInput(boolean input) {
 		this.input = input;
+		modCount++;
 		return this;
 	}
 	
+	@Override
 	public boolean isOutput() {
 		return output;
 	}
 	
 	public EssentiaContainer setOutput(boolean output) {
 		this.output = output;
+		modCount++;
 		return this;
 	}
 	
+	@Override
 	public boolean isInfinite() {
 		return infinite;
 	}
 	
 	public EssentiaContainer setInfinite(boolean infinite) {
 		this.infinite = infinite;
+		modCount++;
 		return this;
 	}
 	
+	@Override
 	public boolean isWhitelistEnabled() {
 		return whitelistEnabled;
 	}
 	
 	public EssentiaContainer setWhitelistEnabled(boolean whitelistEnabled) {
 		this.whitelistEnabled = whitelistEnabled;
+		modCount++;
 		return this;
 	}
 	
 	public EssentiaContainer whitelist(Essentia essentia) {
-		whitelist.add(essentia);
+		int id = EssentiaStack.rawId(essentia);
+		if (id >= 0) {
+			whitelist = EssentiaStack.setBit(whitelist, id);
+		}
+		modCount++;
 		return this;
 	}
 	
 	public EssentiaContainer blacklist(Essentia essentia) {
-		whitelist.remove(essentia);
+		EssentiaStack.clearBit(whitelist, EssentiaStack.rawId(essentia));
+		modCount++;
 		return this;
 	}
 	
 	// Clears any essentia in violation of the whitelist; returns true if any essentia was deleted
+	@Override
 	public boolean enforceWhitelist() {
 		if (whitelistEnabled) {
 			boolean removed = false;
-			for (Essentia key : contents.keySet()) {
-				if (!whitelist.contains(key)) {
-					contents.remove(key);
+			for (int id = contents.nextId(0); id >= 0; id = contents.nextId(id + 1)) {
+				if (!EssentiaStack.testBit(whitelist, id)) {
+					contents.set(id, 0);
 					removed = true;
 				}
 			}
@@ -191,39 +282,64 @@ public class EssentiaContainer {
 		}
 	}
 	
+	@Override
 	public int getCount(Essentia essentia) {
 		if (essentia != null) {
-			return contents.getOrDefault(essentia, 0);
+			return contents.getCount(essentia);
 		} else {
 			return 0;
 		}
 	}
 	
+	int getCount(int id) {
+		return contents.getCount(id);
+	}
+	
+	@Override
 	public int getCount() {
 		return contents.getCount();
 	}
 	
-	public boolean isEmpty() {
-		for (int amount : contents.values()) {
-			if (amount != 0) {
-				return false;
-			}
-		}
-		return true;
+	// Number of essentia types with a non-zero amount
+	@Override
+	public int getTypeCount() {
+		return contents.size();
 	}
 	
-	public boolean isFull() {
+	// Room left before hitting capacity; Integer.MAX_VALUE when capacity is unlimited
+	@Override
+	public int getFreeCapacity() {
 		if (capacity != null) {
-			return getCount() >= capacity;
+			return Math.max(0, capacity - getCount() - reserved);
 		} else {
-			return false;
+			return Integer.MAX_VALUE;
 		}
 	}
 	
+	@Override
+	public boolean isEmpty() {
+		return contents.isEmpty();
+	}
+	
+	@Override
+	public boolean isFull() {
+		return getFreeCapacity() <= 0;
+	}
+	
+	void reserveCapacity(int amount) {
+		reserved += amount;
+	}
+	
+	void releaseCapacity(int amount) {
+		reserved = Math.max(0, reserved - amount);
+	}
+	
+	@Override
 	public boolean contains(EssentiaStack query) {
 		return contents.contains(query);
 	}
 	
+	@Override
 	public boolean emptyContents() {
 		if (!isEmpty()) {
 			this.contents.clear();
@@ -233,25 +349,30 @@ public class EssentiaContainer {
 		}
 	}
 	
+	@Override
 	public boolean whitelisted(Essentia essentia) {
-		return (!whitelistEnabled || whitelist.contains(essentia));
+		return whitelisted(EssentiaStack.rawId(essentia));
 	}
 	
+	boolean whitelisted(int id) {
+		return (!whitelistEnabled || EssentiaStack.testBit(whitelist, id));
+	}
+	
+	// True if every essentia type present in the query passes the whitelist
+	@Override
+	public boolean whitelisted(EssentiaStack query) {
+		return (!whitelistEnabled || query.isWithin(whitelist));
+	}
+	
+	@Override
 	public boolean canAcceptIgnoreIO(EssentiaStack query) {
-		if (whitelistEnabled) {
-			for (Essentia key : query.keySet()) {
-				if (query.getOrDefault(key, 0) != 0 && !whitelisted(key)) {
-					return false;
-				}
-			}
-		}
-		if (capacity == null) {
-			return true;
-		} else {
-			return (this.getCount() + query.getCount()) <= capacity;
+		if (!whitelisted(query)) {
+			return false;
 		}
+		return query.getCount() <= getFreeCapacity();
 	}
 	
+	@Override
 	public boolean canAccept(EssentiaStack query) {
 		if (!input) {
 			return false;
@@ -260,13 +381,10 @@ public class EssentiaContainer {
 		}
 	}
 	
+	@Override
 	public boolean canProvideIgnoreIO(EssentiaStack query) {
-		if (whitelistEnabled) {
-			for (Essentia key : query.keySet()) {
-				if (query.getOrDefault(key, 0) != 0 && !whitelisted(key)) {
-					return false;
-				}
-			}
+		if (!whitelisted(query)) {
+			return false;
 		}
 		if (infinite) {
 			return true;
@@ -275,6 +393,7 @@ public class EssentiaContainer {
 		}
 	}
 	
+	@Override
 	public boolean canProvide(EssentiaStack query) {
 		if (!output) {
 			return false;
@@ -283,6 +402,7 @@ public class EssentiaContainer {
 		}
 	}
 	
+	@Override
 	public boolean addEssentia(EssentiaStack stack) {
 		if (canAcceptIgnoreIO(stack)) {
 			contents.add(stack);
@@ -292,6 +412,7 @@ public class EssentiaContainer {
 		}
 	}
 	
+	@Override
 	public boolean subtractEssentia(EssentiaStack stack) {
 		if (canProvideIgnoreIO(stack)) {
 			contents.subtract(stack);
@@ -337,22 +458,23 @@ public class EssentiaContainer {
 			return new EssentiaStack();
 		} else {
 			EssentiaStack transferred = new EssentiaStack();
-			for (Entry<Essentia, Integer> entry : stack.entrySet()) {
-				Essentia key = entry.getKey();
-				int value = entry.getValue();
-				if (this.whitelisted(key) && other.whitelisted(key)) {
-					int transferAmt = value;
-					if (other.capacity != null) {
-						transferAmt = Math.min(transferAmt, other.getCapacity() - other.getCount());
-					}
+			int room = other.getFreeCapacity();
+			for (int id = stack.nextId(0); id >= 0 && room > 0; id = stack.nextId(id + 1)) {
+				if (this.whitelisted(id) && other.whitelisted(id)) {
+					int transferAmt = Math.min(stack.getCount(id), room);
 					if (!this.infinite) {
-						transferAmt = Math.min(transferAmt, this.getCount(key));
-						this.contents.subtract(key, transferAmt);
+						transferAmt = Math.min(transferAmt, this.contents.getCount(id));
 					}
-					if (!other.infinite) {
-						other.contents.add(key, transferAmt);
+					if (transferAmt > 0) {
+						if (!this.infinite) {
+							this.contents.set(id, this.contents.getCount(id) - transferAmt);
+						}
+						if (!other.infinite) {
+							other.contents.set(id, other.contents.getCount(id) + transferAmt);
+						}
+						transferred.set(id, transferAmt);
+						room -= transferAmt;
 					}
-					transferred.put(key, transferAmt);
 				}
 			}
 			return transferred;
@@ -374,24 +496,122 @@ public class EssentiaContainer {
 		return pullStack(other, other.contents);
 	}
 	
+	@Override
 	public CompoundTag toTag() {
 		CompoundTag tag = new CompoundTag();
-		tag.put("essentia", getContents().toTag());
-		ListTag list = new ListTag();
-		for (Essentia essentia : getWhitelist()) {
-			list.add(StringTag.of(RegistryEssentia.INSTANCE.getId(essentia).toString()));
-		}
-		tag.put("whitelist", list);
-		tag.putBoolean("whitelist_enabled", isWhitelistEnabled());
-		tag.putBoolean("infinite", isInfinite());
-		if (capacity == null) {
-			tag.putString("capacity", "unlimited");
-		} else {
-			tag.putInt("capacity", getCapacity());
+		tag.putByte("v", (byte) FORMAT_VERSION);
+		int whitelisted = 0;
+		for (long word : whitelist) {
+			whitelisted += Long.bitCount(word);
+		}
+		ListTag palette = new ListTag();
+		int[] amounts = new int[whitelisted + contents.size()];
+		int entries = 0;
+		int used = 0;
+		for (int id = EssentiaStack.nextBit(whitelist, 0); id >= 0; id = EssentiaStack.nextBit(whitelist, id + 1)) {
+			palette.add(StringTag.of(RegistryEssentia.INSTANCE.getId(EssentiaStack.byRawId(id)).toString()));
+			amounts[entries++] = contents.getCount(id);
+			if (amounts[entries - 1] > 0) {
+				used = entries;
+			}
+		}
+		for (int id = contents.nextId(0); id >= 0; id = contents.nextId(id + 1)) {
+			if (!EssentiaStack.testBit(whitelist, id)) {
+				palette.add(StringTag.of(RegistryEssentia.INSTANCE.getId(EssentiaStack.byRawId(id)).toString()));
+				amounts[entries++] = contents.getCount(id);
+				used = entries;
+			}
+		}
+		tag.put("p", palette);
+		if (whitelisted > 0) {
+			tag.putInt("w", whitelisted);
+		}
+		if (used > 0) {
+			tag.putIntArray("a", Arrays.copyOf(amounts, used));
+		}
+		int flags = (input ? FLAG_INPUT : 0) | (output ? FLAG_OUTPUT : 0)
+			| (infinite ? FLAG_INFINITE : 0) | (whitelistEnabled ? FLAG_WHITELIST_ENABLED : 0);
+		if (flags != DEFAULT_FLAGS) {
+			tag.putByte("f", (byte) flags);
+		}
+		if (capacity != null) {
+			tag.putInt("c", capacity);
 		}
-		tag.putBoolean("input", isInput());
-		tag.putBoolean("output", isOutput());
 		return tag;
 	}
 	
+	private class WhitelistView extends AbstractSet<Essentia> {
+
+		@Override
+		public Iterator<Essentia> iterator() {
+			return new Iterator<Essentia>() {
+				
+				private int next = EssentiaStack.nextBit(whitelist, 0);
+				private int last = -1;
+				
+				@Override
+				public boolean hasNext() {
+					return next >= 0;
+				}
+				
+				@Override
+				public Essentia next() {
+					if (next < 0) {
+						throw new NoSuchElementException();
+					}
+					last = next;
+					next = EssentiaStack.nextBit(whitelist, next + 1);
+					return EssentiaStack.byRawId(last);
+				}
+				
+				@Override
+				public void remove() {
+					if (last < 0) {
+						throw new IllegalStateException();
+					}
+					EssentiaStack.clearBit(whitelist, last);
+					modCount++;
+					last = -1;
+				}
+				
+			};
+		}
+
+		@Override
+		public int size() {
+			int size = 0;
+			for (long bits : whitelist) {
+				size += Long.bitCount(bits);
+			}
+			return size;
+		}
+		
+		@Override
+		public boolean contains(Object obj) {
+			return EssentiaStack.testBit(whitelist, EssentiaStack.rawId(obj));
+		}
+		
+		@Override
+		public boolean add(Essentia essentia) {
+			boolean added = !contains(essentia);
+			whitelist(essentia);
+			return added;
+		}
+		
+		@Override
+		public boolean remove(Object obj) {
+			boolean removed = contains(obj);
+			if (removed) {
+				blacklist((Essentia) obj);
+			}
+			return removed;
+		}
+		
+		@Override
+		public void clear() {
+			clearWhitelist();
+		}
+		
+	}
+	
 }
@@ -0,0 +1,45 @@
+package net.synthrose.artofalchemy.essentia;
+
+import net.minecraft.util.Identifier;
+import net.minecraft.util.PacketByteBuf;
+import net.synthrose.artofalchemy.ArtOfAlchemy;
+
+// Varint wire format for essentia stacks. Raw ids aren't guaranteed to match between server and client,
+// so essentia go by name; each stack is self-contained and can be read back on its own, whatever else
+// shares the buffer. Names in this mod's namespace are sent as just their path, which covers nearly
+// every essentia in a recipe sync.
+//
+// Layout: varint type count, then per type the name and a varint amount.
+final class EssentiaPacketCodec {
+	
+	private static final int MAX_NAME_LENGTH = 32767;
+	
+	private EssentiaPacketCodec() {
+	}
+	
+	static void write(EssentiaStack stack, PacketByteBuf buf) {
+		buf.writeVarInt(stack.size());
+		for (int id = stack.nextId(0); id >= 0; id = stack.nextId(id + 1)) {
+			Identifier name = RegistryEssentia.INSTANCE.getId(EssentiaStack.byRawId(id));
+			buf.writeString(name.getNamespace().equals(ArtOfAlchemy.MOD_ID) ? name.getPath() : name.toString());
+			buf.writeVarInt(stack.getCount(id));
+		}
+	}
+	
+	static EssentiaStack read(PacketByteBuf buf) {
+		EssentiaStack stack = new EssentiaStack();
+		int types = buf.readVarInt();
+		for (int i = 0; i < types; i++) {
+			String name = buf.readString(MAX_NAME_LENGTH);
+			Identifier id = (name.indexOf(':') < 0) ? new Identifier(ArtOfAlchemy.MOD_ID, name) : new Identifier(name);
+			int rawId = EssentiaStack.rawId(RegistryEssentia.INSTANCE.get(id));
+			int amount = buf.readVarInt();
+			// Essentia unknown to this side are dropped from the stack
+			if (rawId >= 0) {
+				stack.set(rawId, stack.getCount(rawId) + amount);
+			}
+		}
+		return stack;
+	}
+
+}
@@ -1,25 +1,51 @@
 package net.synthrose.artofalchemy.essentia;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.PacketByteBuf;
+
+// Essentia amounts stored densely by registry raw id, with a bitmask of the non-zero slots.
+// Still usable as a Map<Essentia, Integer>, but the primitive methods below never box or allocate.
+public class EssentiaStack extends AbstractMap<Essentia, Integer> {
+
+	private int[] amounts;
+	private long[] mask;
+	// Running aggregates, kept exact by set() so totals and emptiness checks are O(1)
+	private int total = 0;
+	private int types = 0;
+	// Bumped on every write that changes an amount
+	private long modCount = 0;
+	private Set<Entry<Essentia, Integer>> entrySet;
 
-@SuppressWarnings("serial")
-public class EssentiaStack extends HashMap<Essentia, Integer> {
-	
 	public EssentiaStack() {
-		super();
+		int size = RegistryEssentia.INSTANCE.getRawIdBound();
+		amounts = new int[size];
+		mask = new long[words(size)];
 	}
-	
+
+	public EssentiaStack(EssentiaStack other) {
+		amounts = Arrays.copyOf(other.amounts, other.amounts.length);
+		mask = Arrays.copyOf(other.mask, other.mask.length);
+		total = other.total;
+		types = other.types;
+	}
+
 	public EssentiaStack(JsonObject obj) {
+		this();
 		obj.entrySet().forEach((entry) -> {
 			Essentia essentia = RegistryEssentia.INSTANCE.get(new Identifier(entry.getKey()));
 			if (essentia != null) {
@@ -29,11 +55,12 @@ public class EssentiaStack extends HashMap<Essentia, Integer> {
 			}
 		});
 	}
-	
+
 	public EssentiaStack(CompoundTag tag) {
+		this();
 		if (tag != null) {
 			tag.getKeys().forEach((key) -> {
-				Essentia essentia = RegistryEssentia.INSTANCE.get(new Identifier(key));
+				Essentia essentia = RegistryEssentia.INSTANCE.getByName(key);
 				if (essentia != null) {
 					put(essentia, tag.getInt(key));
 				}
@@ -41,115 +68,433 @@ public class EssentiaStack extends HashMap<Essentia, Integer> {
 		}
 	}
 
-	public int getCount() {
-		int sum = 0;
-		for (int amount : values()) {
-			sum += amount;
+	static int words(int size) {
+		return (size + 63) >> 6;
+	}
+
+	// Grows the backing arrays if an essentia was registered after this stack was sized
+	private void ensureCapacity(int id) {
+		if (id >= amounts.length) {
+			int size = Math.max(id + 1, RegistryEssentia.INSTANCE.getRawIdBound());
+			amounts = Arrays.copyOf(amounts, size);
+			mask = Arrays.copyOf(mask, words(size));
 		}
-		return sum;
 	}
-	
+
+	// Returns the first raw id at or after the given one holding a non-zero amount, or -1
+	int nextId(int from) {
+		return nextBit(mask, from);
+	}
+
+	// True if every non-zero essentia in this stack is set in the given raw id bitmask
+	boolean isWithin(long[] allowed) {
+		for (int word = 0; word < mask.length; word++) {
+			long outside = mask[word] & ~(word < allowed.length ? allowed[word] : 0L);
+			if (outside != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Raw id bitmask helpers, shared with the container whitelist
+	static int nextBit(long[] bits, int from) {
+		int word = from >> 6;
+		if (from < 0 || word >= bits.length) {
+			return -1;
+		}
+		long current = bits[word] & (-1L << (from & 63));
+		while (current == 0) {
+			if (++word >= bits.length) {
+				return -1;
+			}
+			current = bits[word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(current);
+	}
+
+	static boolean testBit(long[] bits, int id) {
+		return id >= 0 && (id >> 6) < bits.length && (bits[id >> 6] & (1L << id)) != 0;
+	}
+
+	// Returns the mask with the bit set, grown if the id doesn't fit yet
+	static long[] setBit(long[] bits, int id) {
+		if ((id >> 6) >= bits.length) {
+			bits = Arrays.copyOf(bits, Math.max(words(id + 1), words(RegistryEssentia.INSTANCE.getRawIdBound())));
+		}
+		bits[id >> 6] |= 1L << id;
+		return bits;
+	}
+
+	static void clearBit(long[] bits, int id) {
+		if (id >= 0 && (id >> 6) < bits.length) {
+			bits[id >> 6] &= ~(1L << id);
+		}
+	}
+
+	int getCount(int id) {
+		if (id >= 0 && id < amounts.length) {
+			return amounts[id];
+		} else {
+			return 0;
+		}
+	}
+
+	void set(int id, int amount) {
+		if (id < 0) {
+			throw new IllegalArgumentException("Unregistered essentia");
+		}
+		checkMutable();
+		int previous = getCount(id);
+		if (previous == amount) {
+			return;
+		}
+		modCount++;
+		total += amount - previous;
+		if (previous == 0 && amount != 0) {
+			types++;
+		} else if (previous != 0 && amount == 0) {
+			types--;
+		}
+		if (amount == 0) {
+			if (id < amounts.length) {
+				amounts[id] = 0;
+				mask[id >> 6] &= ~(1L << id);
+			}
+		} else {
+			ensureCapacity(id);
+			amounts[id] = amount;
+			mask[id >> 6] |= 1L << id;
+		}
+	}
+
+	// Increases every time the stack changes; compare against a saved value to detect changes
+	public long getModCount() {
+		return modCount;
+	}
+
+	// Called before every write; frozen stacks reject the mutation here
+	protected void checkMutable() {
+		
+	}
+
+	static int rawId(Object essentia) {
+		if (essentia instanceof Essentia) {
+			return RegistryEssentia.INSTANCE.getRawId((Essentia) essentia);
+		} else {
+			return -1;
+		}
+	}
+
+	static Essentia byRawId(int id) {
+		return RegistryEssentia.INSTANCE.get(id);
+	}
+
+	public int getCount(Essentia essentia) {
+		if (essentia != null) {
+			return getCount(rawId(essentia));
+		} else {
+			return 0;
+		}
+	}
+
+	public int getCount() {
+		return total;
+	}
+
 	public CompoundTag toTag() {
 		CompoundTag tag = new CompoundTag();
-		for (Essentia essentia : keySet()) {
-			tag.putInt(RegistryEssentia.INSTANCE.getId(essentia).toString(), get(essentia));
+		for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+			tag.putInt(RegistryEssentia.INSTANCE.getId(byRawId(id)).toString(), amounts[id]);
 		}
 		return tag;
 	}
-	
+
+	// Compact network form; see EssentiaPacketCodec
+	public void write(PacketByteBuf buf) {
+		EssentiaPacketCodec.write(this, buf);
+	}
+
+	public static EssentiaStack fromPacket(PacketByteBuf buf) {
+		return EssentiaPacketCodec.read(buf);
+	}
+
 	public List<Essentia> sortedList() {
 		List<Essentia> list = new ArrayList<>();
-		for (Essentia key : keySet()) {
-			if (get(key) > 0) {
-				list.add(key);
+		for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+			if (amounts[id] > 0) {
+				list.add(byRawId(id));
 			}
 		}
 		list.sort((item1, item2) -> {
-			return get(item2) - get(item1);
+			return getCount(item2) - getCount(item1);
 		});
 		return list;
 	}
-	
-	// Mutating addition for a single essentia type. Can go negative - try not to break things.
+
+	// Mutating multiplication for a single essentia type. Can go negative - try not to break things.
 	public void multiply(Essentia essentia, int scalar) {
-		this.put(essentia, this.getOrDefault(essentia, 0) * scalar);
+		int id = rawId(essentia);
+		set(id, getCount(id) * scalar);
 	}
 	public void multiply(Essentia essentia, double scalar) {
-		this.put(essentia, (int) (this.getOrDefault(essentia, 0) * scalar));
+		int id = rawId(essentia);
+		set(id, (int) (getCount(id) * scalar));
 	}
-	
+
 	// Mutating scalar multiplication. Can go negative - try not to break things.
 	public void multiply(int scalar) {
-		this.forEach(this::multiply);
+		for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+			set(id, amounts[id] * scalar);
+		}
 	}
 	public void multiply(double scalar) {
-		this.forEach(this::multiply);
+		for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+			set(id, (int) (amounts[id] * scalar));
+		}
 	}
-	
+
+	// Non-mutating scalar multiplication, truncating each amount like multiply(double).
+	public EssentiaStack scaled(double scalar) {
+		EssentiaStack outStack = new EssentiaStack(this);
+		outStack.multiply(scalar);
+		return outStack;
+	}
+
+	// Returns an immutable copy of this stack.
+	public FrozenEssentiaStack freeze() {
+		return new FrozenEssentiaStack(this, 1.0);
+	}
+
 	// Non-mutating scalar multiplication. Can go negative - try not to break things.
 	public EssentiaStack multiply(EssentiaStack inStack, int scalar) {
-		EssentiaStack outStack = new EssentiaStack();
-		inStack.forEach((essentia, amount) -> {
-			outStack.put(essentia, amount * scalar);
-		});
+		EssentiaStack outStack = new EssentiaStack(inStack);
+		outStack.multiply(scalar);
 		return outStack;
 	}
-	
+
 	// Mutating addition for a single essentia type.
 	public void add(Essentia essentia, int amount) {
-		this.put(essentia, this.getOrDefault(essentia, 0) + amount);
+		int id = rawId(essentia);
+		set(id, getCount(id) + amount);
 	}
-	
+
 	// Mutating addition.
 	public void add(EssentiaStack other) {
-		other.forEach(this::add);
+		for (int id = other.nextId(0); id >= 0; id = other.nextId(id + 1)) {
+			set(id, getCount(id) + other.amounts[id]);
+		}
 	}
-	
+
 	// Non-mutating addition.
 	public static EssentiaStack add(EssentiaStack stack1, EssentiaStack stack2) {
-		EssentiaStack outStack = new EssentiaStack();
-		Set<Essentia> union = new HashSet<Essentia>();
-		union.addAll(stack1.keySet());
-		union.addAll(stack2.keySet());
-		union.forEach((essentia) -> {
-			outStack.put(essentia, stack1.getOrDefault(essentia, 0) + stack2.getOrDefault(essentia, 0));
-		});
+		EssentiaStack outStack = new EssentiaStack(stack1);
+		outStack.add(stack2);
 		return outStack;
 	}
-	
+
 	// Mutating subtraction for a single essentia type.
 	public void subtract(Essentia essentia, int amount) {
-		this.put(essentia, Math.max(0, this.getOrDefault(essentia, 0) - amount));
+		int id = rawId(essentia);
+		set(id, Math.max(0, getCount(id) - amount));
 	}
-	
+
 	// Mutating subtraction.
 	public void subtract(EssentiaStack other) {
-		other.forEach(this::subtract);
+		for (int id = other.nextId(0); id >= 0; id = other.nextId(id + 1)) {
+			set(id, Math.max(0, getCount(id) - other.amounts[id]));
+		}
 	}
-	
+
 	// Non-mutating subtraction.
 	public static EssentiaStack subtract(EssentiaStack stack1, EssentiaStack stack2) {
-		EssentiaStack outStack = new EssentiaStack();
-		Set<Essentia> union = stack1.keySet();
-		union.addAll(stack2.keySet());
-		union.forEach((essentia) -> {
-			int amount = Math.min(0, stack1.getOrDefault(essentia, 0) - stack2.getOrDefault(essentia, 0));
-			outStack.put(essentia, amount);
-		});
+		EssentiaStack outStack = new EssentiaStack(stack1);
+		outStack.subtract(stack2);
 		return outStack;
 	}
-	
+
 	// Returns true if this stack contains at least as much essentia of all types as the argument.
 	public boolean contains(EssentiaStack other) {
-		Set<Essentia> union = new HashSet<Essentia>();
-		union.addAll(this.keySet());
-		union.addAll(other.keySet());
-		for (Essentia essentia : union) {
-			if (this.getOrDefault(essentia, 0) < other.getOrDefault(essentia, 0)) {
-				return false;
+		int length = Math.max(this.mask.length, other.mask.length);
+		for (int word = 0; word < length; word++) {
+			long bits = (word < this.mask.length ? this.mask[word] : 0L)
+					| (word < other.mask.length ? other.mask[word] : 0L);
+			while (bits != 0) {
+				int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+				if (this.getCount(id) < other.getCount(id)) {
+					return false;
+				}
+				bits &= bits - 1;
 			}
 		}
 		return true;
 	}
-	
+
+	@Override
+	public int size() {
+		return types;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return types == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return getCount(rawId(key)) != 0;
+	}
+
+	@Override
+	public Integer get(Object key) {
+		int amount = getCount(rawId(key));
+		return amount != 0 ? amount : null;
+	}
+
+	@Override
+	public Integer getOrDefault(Object key, Integer defaultValue) {
+		int amount = getCount(rawId(key));
+		return amount != 0 ? amount : defaultValue;
+	}
+
+	@Override
+	public Integer put(Essentia key, Integer value) {
+		int id = rawId(key);
+		Integer previous = get(key);
+		set(id, value);
+		return previous;
+	}
+
+	@Override
+	public Integer remove(Object key) {
+		int id = rawId(key);
+		Integer previous = get(key);
+		if (previous != null) {
+			set(id, 0);
+		}
+		return previous;
+	}
+
+	@Override
+	public void putAll(Map<? extends Essentia, ? extends Integer> map) {
+		if (map instanceof EssentiaStack) {
+			EssentiaStack other = (EssentiaStack) map;
+			for (int id = other.nextId(0); id >= 0; id = other.nextId(id + 1)) {
+				set(id, other.amounts[id]);
+			}
+		} else {
+			super.putAll(map);
+		}
+	}
+
+	@Override
+	public void clear() {
+		checkMutable();
+		if (types != 0) {
+			Arrays.fill(amounts, 0);
+			Arrays.fill(mask, 0L);
+			total = 0;
+			types = 0;
+			modCount++;
+		}
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super Essentia, ? super Integer> action) {
+		for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+			action.accept(byRawId(id), amounts[id]);
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof EssentiaStack) {
+			EssentiaStack other = (EssentiaStack) obj;
+			int length = Math.max(this.amounts.length, other.amounts.length);
+			for (int id = 0; id < length; id++) {
+				if (this.getCount(id) != other.getCount(id)) {
+					return false;
+				}
+			}
+			return true;
+		} else {
+			return super.equals(obj);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode();
+	}
+
+	@Override
+	public Set<Entry<Essentia, Integer>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Entry<Essentia, Integer>>() {
+
+				@Override
+				public Iterator<Entry<Essentia, Integer>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return EssentiaStack.this.size();
+				}
+
+			};
+		}
+		return entrySet;
+	}
+
+	// Walks the bitmask rather than a snapshot, so entries removed mid-iteration are simply skipped
+	private class EntryIterator implements Iterator<Entry<Essentia, Integer>> {
+
+		private int next = nextId(0);
+		private int last = -1;
+
+		@Override
+		public boolean hasNext() {
+			return next >= 0;
+		}
+
+		@Override
+		public Entry<Essentia, Integer> next() {
+			if (next < 0) {
+				throw new NoSuchElementException();
+			}
+			last = next;
+			next = nextId(next + 1);
+			return new StackEntry(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			set(last, 0);
+			last = -1;
+		}
+
+	}
+
+	private class StackEntry extends SimpleEntry<Essentia, Integer> {
+
+		private static final long serialVersionUID = 1L;
+		private final int id;
+
+		public StackEntry(int id) {
+			super(byRawId(id), amounts[id]);
+			this.id = id;
+		}
+
+		@Override
+		public Integer setValue(Integer value) {
+			set(id, value);
+			return super.setValue(value);
+		}
+
+	}
+
 }
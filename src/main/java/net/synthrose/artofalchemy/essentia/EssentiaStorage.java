@@ -0,0 +1,67 @@
+package net.synthrose.artofalchemy.essentia;
+
+import net.minecraft.nbt.CompoundTag;
+
+// What EssentiaContainer and ConcurrentEssentiaContainer have in common: reading amounts and settings,
+// and moving whole stacks in and out. Code that only needs these can take either container.
+// Transfers between two containers stay on the concrete classes, which know how to do them atomically.
+public interface EssentiaStorage {
+	
+	public int getCount(Essentia essentia);
+	
+	public int getCount();
+	
+	// Number of essentia types with a non-zero amount
+	public int getTypeCount();
+	
+	// Contents at the time of the call; not necessarily live or modifiable
+	public EssentiaStack getContents();
+	
+	public int getCapacity();
+	
+	public boolean hasUnlimitedCapacity();
+	
+	// Room left before hitting capacity; Integer.MAX_VALUE when capacity is unlimited
+	public int getFreeCapacity();
+	
+	public boolean isEmpty();
+	
+	public boolean isFull();
+	
+	public boolean isInput();
+	
+	public boolean isOutput();
+	
+	public boolean isInfinite();
+	
+	public boolean isWhitelistEnabled();
+	
+	public boolean whitelisted(Essentia essentia);
+	
+	// True if every essentia type present in the query passes the whitelist
+	public boolean whitelisted(EssentiaStack query);
+	
+	public boolean contains(EssentiaStack query);
+	
+	public boolean canAcceptIgnoreIO(EssentiaStack query);
+	
+	public boolean canAccept(EssentiaStack query);
+	
+	public boolean canProvideIgnoreIO(EssentiaStack query);
+	
+	public boolean canProvide(EssentiaStack query);
+	
+	// Adds the whole stack or nothing
+	public boolean addEssentia(EssentiaStack stack);
+	
+	// Removes the whole stack or nothing
+	public boolean subtractEssentia(EssentiaStack stack);
+	
+	public boolean emptyContents();
+	
+	// Clears any essentia in violation of the whitelist; returns true if any essentia was deleted
+	public boolean enforceWhitelist();
+	
+	public CompoundTag toTag();
+
+}
@@ -0,0 +1,234 @@
+package net.synthrose.artofalchemy.essentia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Moves essentia between any number of containers as a single all-or-nothing operation.
+//
+// 1. simulate() each move; nothing is touched yet, but later moves see the effects of earlier ones.
+// 2. reserve() takes the planned essentia out of the sources and holds capacity in the targets,
+//    failing without changing anything if the containers no longer allow the plan.
+// 3. commit() delivers everything that was reserved, or rollback() puts it all back.
+//
+// Reservations aren't saved: until the transaction is settled, the essentia exists only in the
+// transaction, and the targets' held capacity lasts until they're reloaded. Always commit() or
+// rollback() in the same tick as reserve(), before anything can save or unload the containers;
+// commit() alone reserves and delivers in one call.
+//
+// A transaction can be reused after commit() or rollback(); its buffers are kept between batches.
+public class EssentiaTransaction {
+
+	private final List<Move> moves = new ArrayList<>();
+	private int size = 0;
+	private int planned = 0;
+	private boolean complete = true;
+	private boolean reserved = false;
+
+	private static class Move {
+
+		private EssentiaContainer from;
+		private EssentiaContainer to;
+		private int[] amounts = new int[0];
+		private int total;
+
+	}
+
+	// Plans moving as much of the stack as possible; returns the amount that would be moved
+	public int simulate(EssentiaContainer from, EssentiaContainer to, EssentiaStack stack) {
+		if (reserved) {
+			throw new IllegalStateException("Can't add to a transaction that has already been reserved");
+		}
+		Move move = nextMove(from, to);
+		if (from == to || !from.isOutput() || !to.isInput()) {
+			complete &= stack.isEmpty();
+			return 0;
+		}
+		int room = getRoom(to, size - 1);
+		for (int id = stack.nextId(0); id >= 0; id = stack.nextId(id + 1)) {
+			int wanted = stack.getCount(id);
+			if (wanted <= 0) {
+				continue;
+			}
+			int amount = 0;
+			if (from.whitelisted(id) && to.whitelisted(id)) {
+				amount = Math.min(wanted, room);
+				if (!from.isInfinite()) {
+					amount = Math.min(amount, getAvailable(from, id, size - 1));
+				}
+			}
+			if (amount < wanted) {
+				complete = false;
+			}
+			if (amount > 0) {
+				if (id >= move.amounts.length) {
+					// Registered since the move was sized
+					move.amounts = Arrays.copyOf(move.amounts, id + 1);
+				}
+				move.amounts[id] = amount;
+				move.total += amount;
+				room -= amount;
+			}
+		}
+		planned += move.total;
+		return move.total;
+	}
+
+	// Plans moving as much of the source's contents as possible; returns the amount that would be moved
+	public int simulateContents(EssentiaContainer from, EssentiaContainer to) {
+		return simulate(from, to, from.getContents());
+	}
+
+	// Total essentia the planned moves would transfer
+	public int getPlanned() {
+		return planned;
+	}
+
+	// True if every simulated move could be planned in full
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public boolean isReserved() {
+		return reserved;
+	}
+
+	// Takes the planned essentia out of the sources; returns false and changes nothing if the plan is stale.
+	// Must be followed by commit() or rollback() in the same tick.
+	public boolean reserve() {
+		if (reserved) {
+			return true;
+		}
+		for (int i = 0; i < size; i++) {
+			Move move = moves.get(i);
+			if (move.total == 0) {
+				continue;
+			}
+			if (!move.from.isOutput() || !move.to.isInput() || move.total > getRoom(move.to, i)) {
+				return false;
+			}
+			if (!move.from.isInfinite()) {
+				for (int id = 0; id < move.amounts.length; id++) {
+					if (move.amounts[id] > getAvailable(move.from, id, i)) {
+						return false;
+					}
+				}
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			Move move = moves.get(i);
+			if (!move.from.isInfinite()) {
+				for (int id = 0; id < move.amounts.length; id++) {
+					if (move.amounts[id] != 0) {
+						move.from.getContents().set(id, move.from.getCount(id) - move.amounts[id]);
+					}
+				}
+			}
+			if (!move.to.isInfinite()) {
+				move.to.reserveCapacity(move.total);
+			}
+		}
+		reserved = true;
+		return true;
+	}
+
+	// Applies the whole plan, reserving it first if needed; returns false if nothing could be applied
+	public boolean commit() {
+		if (!reserve()) {
+			clear();
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			Move move = moves.get(i);
+			if (!move.to.isInfinite()) {
+				move.to.releaseCapacity(move.total);
+				for (int id = 0; id < move.amounts.length; id++) {
+					if (move.amounts[id] != 0) {
+						move.to.getContents().set(id, move.to.getCount(id) + move.amounts[id]);
+					}
+				}
+			}
+		}
+		clear();
+		return true;
+	}
+
+	// Returns any reserved essentia to its sources and discards the plan
+	public void rollback() {
+		if (reserved) {
+			for (int i = 0; i < size; i++) {
+				Move move = moves.get(i);
+				if (!move.from.isInfinite()) {
+					for (int id = 0; id < move.amounts.length; id++) {
+						if (move.amounts[id] != 0) {
+							move.from.getContents().set(id, move.from.getCount(id) + move.amounts[id]);
+						}
+					}
+				}
+				if (!move.to.isInfinite()) {
+					move.to.releaseCapacity(move.total);
+				}
+			}
+		}
+		clear();
+	}
+
+	private void clear() {
+		for (int i = 0; i < size; i++) {
+			Move move = moves.get(i);
+			move.from = null;
+			move.to = null;
+		}
+		size = 0;
+		planned = 0;
+		complete = true;
+		reserved = false;
+	}
+
+	private Move nextMove(EssentiaContainer from, EssentiaContainer to) {
+		if (size == moves.size()) {
+			moves.add(new Move());
+		}
+		Move move = moves.get(size++);
+		int length = RegistryEssentia.INSTANCE.getRawIdBound();
+		if (move.amounts.length < length) {
+			move.amounts = new int[length];
+		} else {
+			Arrays.fill(move.amounts, 0);
+		}
+		move.from = from;
+		move.to = to;
+		move.total = 0;
+		return move;
+	}
+
+	// Essentia of one type still in the container once the moves before the given one have left
+	private int getAvailable(EssentiaContainer container, int id, int before) {
+		int available = container.getCount(id);
+		if (!reserved) {
+			for (int i = 0; i < before; i++) {
+				Move move = moves.get(i);
+				if (move.from == container && id < move.amounts.length) {
+					available -= move.amounts[id];
+				}
+			}
+		}
+		return available;
+	}
+
+	// Capacity still free in the container once the moves before the given one have arrived
+	private int getRoom(EssentiaContainer container, int before) {
+		if (container.hasUnlimitedCapacity()) {
+			return Integer.MAX_VALUE;
+		}
+		int room = container.getFreeCapacity();
+		for (int i = 0; i < before; i++) {
+			Move move = moves.get(i);
+			if (move.to == container) {
+				room -= move.total;
+			}
+		}
+		return Math.max(0, room);
+	}
+
+}
@@ -0,0 +1,57 @@
+package net.synthrose.artofalchemy.essentia;
+
+// An essentia stack that can't be modified, for values shared between many readers (like recipe results).
+// Every mutating method throws; use scaled() to get adjusted amounts without touching the original.
+public class FrozenEssentiaStack extends EssentiaStack {
+
+	private boolean frozen = false;
+	// Last scaled copy handed out, so a machine re-reading the same factor every tick doesn't allocate
+	private Scaled lastScaled = null;
+
+	FrozenEssentiaStack(EssentiaStack stack, double scalar) {
+		super(stack);
+		if (scalar != 1.0) {
+			multiply(scalar);
+		}
+		frozen = true;
+	}
+
+	@Override
+	protected void checkMutable() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Tried to modify a frozen essentia stack");
+		}
+	}
+
+	@Override
+	public FrozenEssentiaStack freeze() {
+		return this;
+	}
+
+	// Non-mutating scalar multiplication; copies only when the factor actually changes the amounts.
+	@Override
+	public FrozenEssentiaStack scaled(double scalar) {
+		if (scalar == 1.0) {
+			return this;
+		}
+		Scaled scaled = lastScaled;
+		if (scaled == null || scaled.scalar != scalar) {
+			scaled = new Scaled(scalar, new FrozenEssentiaStack(this, scalar));
+			lastScaled = scaled;
+		}
+		return scaled.stack;
+	}
+
+	private static class Scaled {
+
+		private final double scalar;
+		private final FrozenEssentiaStack stack;
+
+		private Scaled(double scalar, FrozenEssentiaStack stack) {
+			this.scalar = scalar;
+			this.stack = stack;
+		}
+
+	}
+
+}
@@ -1,5 +1,7 @@
 package net.synthrose.artofalchemy.essentia;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.BiConsumer;
 
 import net.minecraft.util.Identifier;
@@ -10,12 +12,47 @@ public class RegistryEssentia extends SimpleRegistry<Essentia> {
 
 	public static final RegistryEssentia INSTANCE = create(ArtOfAlchemy.id("essentia"));
 	
+	private volatile Map<String, Essentia> byName = new HashMap<>();
+	// Registry size in the high half, raw id bound in the low half, so both are read together
+	private volatile long rawIdBound = -1L << 32;
+	
 	public void forEach(BiConsumer<Essentia, Identifier> function) {
 		forEach((essentia) -> {
 			function.accept(essentia, getId(essentia));
 		});
 	}
 	
+	// One past the highest raw id handed out so far, for sizing arrays indexed by raw id. Raw ids may
+	// have gaps, so this is the highest id plus one rather than the entry count, recomputed whenever the
+	// registry grows.
+	public int getRawIdBound() {
+		int size = getIds().size();
+		long cached = rawIdBound;
+		if ((int) (cached >> 32) != size) {
+			int max = -1;
+			for (Identifier id : getIds()) {
+				max = Math.max(max, getRawId(get(id)));
+			}
+			cached = ((long) size << 32) | (max + 1);
+			rawIdBound = cached;
+		}
+		return (int) cached;
+	}
+	
+	// Looks up essentia by identifier string without parsing a fresh Identifier for every NBT key
+	public Essentia getByName(String name) {
+		Map<String, Essentia> names = byName;
+		if (names.size() != getIds().size()) {
+			names = new HashMap<>();
+			for (Identifier id : getIds()) {
+				names.put(id.toString(), get(id));
+			}
+			byName = names;
+		}
+		Essentia essentia = names.get(name);
+		return (essentia != null) ? essentia : get(new Identifier(name));
+	}
+	
 	private static RegistryEssentia create(Identifier id) {
 		RegistryEssentia registry = new RegistryEssentia();
 		return REGISTRIES.add(id, registry);
@@ -1,6 +1,7 @@
 package net.synthrose.artofalchemy.gui;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 
 import io.github.cottonmc.cotton.gui.widget.WListPanel;
@@ -10,14 +11,11 @@ import net.synthrose.artofalchemy.essentia.EssentiaContainer;
 public class WEssentiaPanel extends WListPanel<Essentia, WEssentiaSubPanel> {
 	
 	protected EssentiaContainer container = new EssentiaContainer();
+	protected long modCount = -1;
 		
 	public WEssentiaPanel(EssentiaContainer container) {
 		super(new ArrayList<Essentia>(), null, null);
-		this.container = container;
 		this.supplier = WEssentiaSubPanel::new;
-		this.configurator = (Essentia essentia, WEssentiaSubPanel panel) -> {
-			panel.setEssentia(essentia, container.getCount(essentia));
-		};
 		updateEssentia(container);
 	}
 	
@@ -26,21 +24,35 @@ public class WEssentiaPanel extends WListPanel<Essentia, WEssentiaSubPanel> {
 	}
 	
 	public void updateEssentia(EssentiaContainer container) {
+		if (container == this.container && container.getModCount() == modCount) {
+			return;
+		}
 		this.container = container;
+		this.modCount = container.getModCount();
 		this.configurator = (Essentia essentia, WEssentiaSubPanel panel) -> {
 			panel.setEssentia(essentia, container.getCount(essentia));
 		};
-		rebuildList();
-		reconfigure();
-		this.layout();
+		// Only the amounts changed when the same essentia are listed, so the layout can stay
+		if (rebuildList()) {
+			reconfigure();
+			this.layout();
+		} else {
+			reconfigure();
+		}
 	}
 	
-	protected void rebuildList() {
-		data.clear();
-		data.addAll(container.getContents().sortedList());
-		if (data.isEmpty()) {
-			data.add(null);
+	// Returns true if the listed essentia changed
+	protected boolean rebuildList() {
+		List<Essentia> sorted = container.getContents().sortedList();
+		if (sorted.isEmpty()) {
+			sorted.add(null);
 		}
+		if (sorted.equals(data)) {
+			return false;
+		}
+		data.clear();
+		data.addAll(sorted);
+		return true;
 	}
 	
 	protected void reconfigure() {
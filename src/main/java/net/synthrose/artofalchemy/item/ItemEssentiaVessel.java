@@ -1,6 +1,5 @@
 package net.synthrose.artofalchemy.item;
 
-import java.util.HashSet;
 import java.util.List;
 
 import blue.endless.jankson.annotation.Nullable;
@@ -24,11 +23,11 @@ import net.minecraft.util.Hand;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.TypedActionResult;
 import net.minecraft.util.Util;
-import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.registry.Registry;
 import net.minecraft.world.World;
 import net.synthrose.artofalchemy.essentia.Essentia;
 import net.synthrose.artofalchemy.essentia.EssentiaContainer;
+import net.synthrose.artofalchemy.essentia.EssentiaTransaction;
 import net.synthrose.artofalchemy.essentia.HasEssentia;
 
 public class ItemEssentiaVessel extends Item {
@@ -38,6 +37,7 @@ public class ItemEssentiaVessel extends Item {
 	
 	public final Essentia TYPE;
 	private String translationKey;
+	private VesselView defaultView;
 	
 	public ItemEssentiaVessel(Settings settings, Essentia type) {
 		super(settings.maxCount(1));
@@ -45,12 +45,7 @@ public class ItemEssentiaVessel extends Item {
 		this.addPropertyGetter(new Identifier("level"), new ItemPropertyGetter() {
 			@Environment(EnvType.CLIENT)
 			public float call(ItemStack stack, @Nullable World world, @Nullable LivingEntity entity) {
-				EssentiaContainer contents = ItemEssentiaVessel.getContainer(stack);
-				double level = contents.getCount();
-				if (!contents.hasUnlimitedCapacity()) {
-					level /= contents.getCapacity();
-				}
-				return (float) MathHelper.clamp(level, 0.0, 1.0);
+				return VesselView.of(stack).getLevel();
 			}
 		});
 	}
@@ -84,9 +79,18 @@ public class ItemEssentiaVessel extends Item {
 		return container;
 	}
 	
+	// Shared view for vessels that have never been given a contents tag
+	@Environment(EnvType.CLIENT)
+	VesselView getDefaultView() {
+		if (defaultView == null) {
+			defaultView = VesselView.ofDefault(this);
+		}
+		return defaultView;
+	}
+	
 	public void setContainer(ItemStack stack, EssentiaContainer container) {
 		if (TYPE != null) {
-			container.setWhitelist(new HashSet<Essentia>()).whitelist(TYPE).setWhitelistEnabled(true);
+			container.clearWhitelist().whitelist(TYPE).setWhitelistEnabled(true);
 		}
 		container.in(stack);
 	}
@@ -105,16 +109,20 @@ public class ItemEssentiaVessel extends Item {
 		if (be != null && be instanceof HasEssentia) {
 			
 			HasEssentia target = (HasEssentia) be;
-			int transferred = 0;
-			for (int i = 0; i < target.getNumContainers() && transferred == 0; i++) {
-				EssentiaContainer other = target.getContainer(i);
-				int pulled = container.pullContents(other).getCount();
-				transferred += pulled;
+			EssentiaTransaction transaction = new EssentiaTransaction();
+			for (int i = 0; i < target.getNumContainers(); i++) {
+				transaction.simulateContents(target.getContainer(i), container);
+			}
+			int transferred = transaction.getPlanned();
+			if (transferred == 0) {
+				transaction.rollback();
+				for (int i = 0; i < target.getNumContainers(); i++) {
+					transaction.simulateContents(container, target.getContainer(i));
+				}
+				transferred = -transaction.getPlanned();
 			}
-			for (int i = 0; i < target.getNumContainers() && transferred == 0; i++) {
-				EssentiaContainer other = target.getContainer(i);
-				int pushed = container.pushContents(other).getCount();
-				transferred -= pushed;
+			if (!transaction.commit()) {
+				transferred = 0;
 			}
 			container.in(ctx.getStack());
 			
@@ -183,7 +191,12 @@ public class ItemEssentiaVessel extends Item {
 			return;
 		}
 		
-		EssentiaContainer container = getContainer(stack);
+		tooltip.addAll(VesselView.of(stack).getTooltip());
+		
+	}
+	
+	void buildTooltip(EssentiaContainer container, List<Text> tooltip) {
+		
 		String prefix = tooltipPrefix();
 		
 		if (container.isInfinite()) {
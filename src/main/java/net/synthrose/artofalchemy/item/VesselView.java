@@ -0,0 +1,99 @@
+package net.synthrose.artofalchemy.item;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.MathHelper;
+import net.synthrose.artofalchemy.essentia.EssentiaContainer;
+
+// Read-only view of a vessel's contents, cached against the identity of its "contents" tag.
+// EssentiaContainer.in() always writes a fresh tag, and stacks synced from the server carry
+// fresh tags as well, so a changed vessel never hits a stale entry.
+@Environment(EnvType.CLIENT)
+public class VesselView {
+
+	private static final int CACHE_SIZE = 64;
+	private static final VesselView[] CACHE = new VesselView[CACHE_SIZE];
+
+	private final WeakReference<CompoundTag> key;
+	private final ItemEssentiaVessel item;
+	private EssentiaContainer container;
+	private float level = Float.NaN;
+	private List<Text> tooltip;
+
+	private VesselView(ItemEssentiaVessel item, CompoundTag tag) {
+		this.key = new WeakReference<>(tag);
+		this.item = item;
+	}
+
+	public static VesselView of(ItemStack stack) {
+		ItemEssentiaVessel item = (ItemEssentiaVessel) stack.getItem();
+		if (!stack.hasTag() || !stack.getTag().contains("contents")) {
+			return item.getDefaultView();
+		}
+		CompoundTag tag = stack.getTag().getCompound("contents");
+		int slot = System.identityHashCode(tag) & (CACHE_SIZE - 1);
+		VesselView view = CACHE[slot];
+		if (view == null || view.key.get() != tag || view.item != item) {
+			view = new VesselView(item, tag);
+			CACHE[slot] = view;
+		}
+		return view;
+	}
+
+	static VesselView ofDefault(ItemEssentiaVessel item) {
+		VesselView view = new VesselView(item, null);
+		view.container = ItemEssentiaVessel.getContainer(new ItemStack(item));
+		return view;
+	}
+
+	public EssentiaContainer getContainer() {
+		if (container == null) {
+			container = new EssentiaContainer(key.get());
+		}
+		return container;
+	}
+
+	public float getLevel() {
+		if (Float.isNaN(level)) {
+			double count;
+			boolean unlimited;
+			int capacity;
+			CompoundTag tag = key.get();
+			if (container == null && tag != null && tag.contains("v")) {
+				// Compact tags carry the amounts and capacity directly, so skip building a container
+				count = 0;
+				for (int amount : tag.getIntArray("a")) {
+					count += amount;
+				}
+				unlimited = !tag.contains("c");
+				capacity = tag.getInt("c");
+			} else {
+				count = getContainer().getCount();
+				unlimited = getContainer().hasUnlimitedCapacity();
+				capacity = unlimited ? 0 : getContainer().getCapacity();
+			}
+			if (!unlimited) {
+				count /= capacity;
+			}
+			level = (float) MathHelper.clamp(count, 0.0, 1.0);
+		}
+		return level;
+	}
+
+	public List<Text> getTooltip() {
+		if (tooltip == null) {
+			List<Text> lines = new ArrayList<>();
+			item.buildTooltip(getContainer(), lines);
+			tooltip = lines;
+		}
+		return tooltip;
+	}
+
+}
@@ -0,0 +1,70 @@
+package net.synthrose.artofalchemy.mixin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonObject;
+
+import net.minecraft.recipe.Recipe;
+import net.minecraft.recipe.RecipeManager;
+import net.minecraft.recipe.RecipeType;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.profiler.Profiler;
+import net.synthrose.artofalchemy.AoAConfig;
+import net.synthrose.artofalchemy.recipe.EssentiaIndex;
+import net.synthrose.artofalchemy.recipe.GeneratedRecipes;
+
+// Swaps the generated recipe JSON for recipe objects built in code when builtinRecipes is on, and
+// drops stale essentia indexes whenever the recipes are replaced
+@Mixin(RecipeManager.class)
+public abstract class MixinRecipeManager {
+
+	@Shadow
+	private Map<RecipeType<?>, Map<Identifier, Recipe<?>>> recipes;
+
+	@Inject(method = "apply", at = @At("HEAD"))
+	private void skipGeneratedJson(Map<Identifier, JsonObject> map, ResourceManager manager, Profiler profiler,
+			CallbackInfo info) {
+		if (AoAConfig.builtinRecipes) {
+			for (GeneratedRecipes.Entry entry : GeneratedRecipes.getEntries()) {
+				map.remove(entry.getId());
+			}
+		}
+	}
+
+	@Inject(method = "apply", at = @At("TAIL"))
+	private void addGeneratedRecipes(Map<Identifier, JsonObject> map, ResourceManager manager, Profiler profiler,
+			CallbackInfo info) {
+		if (AoAConfig.builtinRecipes) {
+			Map<RecipeType<?>, Map<Identifier, Recipe<?>>> merged = new HashMap<>();
+			recipes.forEach((type, byId) -> merged.put(type, new HashMap<>(byId)));
+			for (GeneratedRecipes.Entry entry : GeneratedRecipes.getEntries()) {
+				Recipe<?> recipe = entry.toRecipe();
+				merged.computeIfAbsent(recipe.getType(), (type) -> new HashMap<>()).put(recipe.getId(), recipe);
+			}
+			ImmutableMap.Builder<RecipeType<?>, Map<Identifier, Recipe<?>>> builder = ImmutableMap.builder();
+			merged.forEach((type, byId) -> builder.put(type, ImmutableMap.copyOf(byId)));
+			recipes = builder.build();
+		}
+	}
+
+	@Inject(method = "apply", at = @At("TAIL"))
+	private void invalidateIndexOnLoad(Map<Identifier, JsonObject> map, ResourceManager manager, Profiler profiler,
+			CallbackInfo info) {
+		EssentiaIndex.invalidate((RecipeManager) (Object) this);
+	}
+
+	@Inject(method = "setRecipes", at = @At("TAIL"))
+	private void invalidateIndexOnSync(Iterable<Recipe<?>> synced, CallbackInfo info) {
+		EssentiaIndex.invalidate((RecipeManager) (Object) this);
+	}
+
+}
@@ -11,7 +11,7 @@ import net.minecraft.util.PacketByteBuf;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.synthrose.artofalchemy.ArtOfAlchemy;
-import net.synthrose.artofalchemy.essentia.EssentiaContainer;
+import net.synthrose.artofalchemy.essentia.EssentiaStorage;
 
 public class AoANetworking {
 
@@ -22,7 +22,7 @@ public class AoANetworking {
 	}
 	
 	public static void sendEssentiaPacket(World world, BlockPos pos,
-			int essentiaId, EssentiaContainer container) {
+			int essentiaId, EssentiaStorage container) {
 		Stream<PlayerEntity> players = PlayerStream.watching(world, pos);
 		
 		PacketByteBuf data = new PacketByteBuf(Unpooled.buffer());
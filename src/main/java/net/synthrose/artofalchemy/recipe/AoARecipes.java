@@ -1,8 +1,18 @@
 package net.synthrose.artofalchemy.recipe;
 
+import java.util.Collection;
+import java.util.Collections;
+
+import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
+import net.fabricmc.fabric.api.resource.ResourceReloadListenerKeys;
+import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
 import net.minecraft.recipe.Recipe;
+import net.minecraft.recipe.RecipeManager;
 import net.minecraft.recipe.RecipeSerializer;
 import net.minecraft.recipe.RecipeType;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.resource.ResourceType;
+import net.minecraft.util.Identifier;
 import net.minecraft.util.registry.Registry;
 import net.synthrose.artofalchemy.ArtOfAlchemy;
 
@@ -10,22 +20,69 @@ public class AoARecipes {
 	
 	public static RecipeType<RecipeCalcination> CALCINATION;
 	public static RecipeSerializer<RecipeCalcination> CALCINATION_SERIALIZER;
+	public static RecipeIndex<RecipeCalcination> CALCINATION_INDEX;
 	
 	public static RecipeType<RecipeDissolution> DISSOLUTION;
 	public static RecipeSerializer<RecipeDissolution> DISSOLUTION_SERIALIZER;
+	public static RecipeIndex<RecipeDissolution> DISSOLUTION_INDEX;
 	
 	public static RecipeType<RecipeSynthesis> SYNTHESIS;
 	public static RecipeSerializer<RecipeSynthesis> SYNTHESIS_SERIALIZER;
+	public static RecipeIndex<RecipeSynthesis> SYNTHESIS_INDEX;
+	
+	private static volatile int generation = 0;
 
 	public static void registerRecipes() {
 		CALCINATION = register("calcination");
 		CALCINATION_SERIALIZER = register("calcination", new SerializerCalcination());
+		CALCINATION_INDEX = new RecipeIndex<>(CALCINATION, RecipeCalcination::getInput, 0);
 		
 		DISSOLUTION = register("dissolution");
 		DISSOLUTION_SERIALIZER = register("dissolution", new SerializerDissolution());
+		DISSOLUTION_INDEX = new RecipeIndex<RecipeDissolution>(DISSOLUTION, RecipeDissolution::getInput, 0) {
+			
+			@Override
+			protected int getExtraVersion(RecipeManager manager) {
+				return EssentiaDerivation.update(manager);
+			}
+			
+			@Override
+			protected Collection<RecipeDissolution> getExtraRecipes(RecipeManager manager) {
+				return EssentiaDerivation.getDerived();
+			}
+			
+		};
 		
 		SYNTHESIS = register("synthesis");
 		SYNTHESIS_SERIALIZER = register("synthesis", new SerializerSynthesis());
+		SYNTHESIS_INDEX = new RecipeIndex<>(SYNTHESIS, RecipeSynthesis::getTarget, 2);
+		
+		RecipeStats.registerLogging();
+		
+		ResourceManagerHelper.get(ResourceType.SERVER_DATA)
+			.registerReloadListener(new SimpleSynchronousResourceReloadListener() {
+			
+			@Override
+			public void apply(ResourceManager manager) {
+				generation++;
+			}
+			
+			@Override
+			public Identifier getFabricId() {
+				return ArtOfAlchemy.id("recipe_generation");
+			}
+			
+			@Override
+			public Collection<Identifier> getFabricDependencies() {
+				return Collections.singleton(ResourceReloadListenerKeys.RECIPES);
+			}
+			
+		});
+	}
+	
+	// Increases every time data packs reload, after the recipe manager has picked up the new recipes
+	public static int getGeneration() {
+		return generation;
 	}
 	
 	public static <T extends Recipe<?>> RecipeType<T> register(String name) {
@@ -0,0 +1,278 @@
+package net.synthrose.artofalchemy.recipe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.recipe.Ingredient;
+import net.minecraft.recipe.Recipe;
+import net.minecraft.recipe.RecipeManager;
+import net.minecraft.util.registry.Registry;
+import net.synthrose.artofalchemy.essentia.Essentia;
+import net.synthrose.artofalchemy.essentia.EssentiaStack;
+import net.synthrose.artofalchemy.essentia.RegistryEssentia;
+
+// Immutable snapshot of the item crafting graph, taken on the server thread so the solve can run
+// anywhere. Items are graph nodes indexed by raw id; every recipe with a real output is an edge set
+// from its ingredients to that output. Items with an explicit dissolution recipe are the fixed seeds.
+final class DerivationGraph {
+
+	// Bounds the number of Jacobi rounds; each round extends values one crafting step further
+	static final int MAX_ROUNDS = 64;
+
+	final int items;
+	final int essentia;
+	final String[] itemNames;
+	final String[] essentiaNames;
+	final int[] remainders;
+	final double[][] seeds;
+	final int[] outputs;
+	final int[] counts;
+	final int[][][] inputs;
+	final int[][] producers;
+
+	private DerivationGraph(int items, int essentia, String[] itemNames, String[] essentiaNames, int[] remainders,
+			double[][] seeds, int[] outputs, int[] counts, int[][][] inputs) {
+		this.items = items;
+		this.essentia = essentia;
+		this.itemNames = itemNames;
+		this.essentiaNames = essentiaNames;
+		this.remainders = remainders;
+		this.seeds = seeds;
+		this.outputs = outputs;
+		this.counts = counts;
+		this.inputs = inputs;
+		this.producers = new int[items][];
+		int[] produced = new int[items];
+		for (int output : outputs) {
+			produced[output]++;
+		}
+		for (int recipe = 0; recipe < outputs.length; recipe++) {
+			int output = outputs[recipe];
+			if (producers[output] == null) {
+				producers[output] = new int[produced[output]];
+				produced[output] = 0;
+			}
+			producers[output][produced[output]++] = recipe;
+		}
+	}
+
+	static DerivationGraph of(RecipeManager manager) {
+		int items = Registry.ITEM.getIds().size();
+		int essentia = RegistryEssentia.INSTANCE.getRawIdBound();
+		String[] itemNames = new String[items];
+		int[] remainders = new int[items];
+		for (int id = 0; id < items; id++) {
+			Item item = Registry.ITEM.get(id);
+			itemNames[id] = Registry.ITEM.getId(item).toString();
+			Item remainder = item.getRecipeRemainder();
+			remainders[id] = (remainder != null) ? Registry.ITEM.getRawId(remainder) : -1;
+		}
+		String[] essentiaNames = new String[essentia];
+		for (int id = 0; id < essentia; id++) {
+			Essentia entry = RegistryEssentia.INSTANCE.get(id);
+			// Unused raw ids still need a name for the hash
+			essentiaNames[id] = (entry != null) ? RegistryEssentia.INSTANCE.getId(entry).toString() : "";
+		}
+
+		double[][] seeds = new double[items][];
+		List<Integer> outputs = new ArrayList<>();
+		List<Integer> counts = new ArrayList<>();
+		List<int[][]> inputs = new ArrayList<>();
+		for (Recipe<?> recipe : manager.values()) {
+			if (recipe instanceof RecipeDissolution) {
+				RecipeDissolution dissolution = (RecipeDissolution) recipe;
+				double[] value = toVector(dissolution.getEssentia(), essentia);
+				for (int id : dissolution.getInput().getIds()) {
+					if (seeds[id] == null) {
+						seeds[id] = value;
+					}
+				}
+				continue;
+			}
+			if (recipe instanceof RecipeSynthesis) {
+				continue;
+			}
+			ItemStack output = recipe.getOutput();
+			if (output == null || output.isEmpty()) {
+				continue;
+			}
+			List<Ingredient> ingredients = new ArrayList<>();
+			if (recipe instanceof RecipeCalcination) {
+				RecipeCalcination calcination = (RecipeCalcination) recipe;
+				for (int i = 0; i < calcination.getCost(); i++) {
+					ingredients.add(calcination.getInput());
+				}
+			} else {
+				ingredients.addAll(recipe.getPreviewInputs());
+			}
+			List<int[]> slots = new ArrayList<>();
+			for (Ingredient ingredient : ingredients) {
+				IntList ids = ingredient.getIds();
+				if (!ids.isEmpty()) {
+					slots.add(ids.toIntArray());
+				}
+			}
+			if (!slots.isEmpty()) {
+				outputs.add(Registry.ITEM.getRawId(output.getItem()));
+				counts.add(output.getCount());
+				inputs.add(slots.toArray(new int[0][]));
+			}
+		}
+
+		int[] outputArray = new int[outputs.size()];
+		int[] countArray = new int[counts.size()];
+		for (int i = 0; i < outputArray.length; i++) {
+			outputArray[i] = outputs.get(i);
+			countArray[i] = counts.get(i);
+		}
+		return new DerivationGraph(items, essentia, itemNames, essentiaNames, remainders, seeds,
+			outputArray, countArray, inputs.toArray(new int[0][][]));
+	}
+
+	private static double[] toVector(EssentiaStack stack, int essentia) {
+		double[] vector = new double[essentia];
+		for (Map.Entry<Essentia, Integer> entry : stack.entrySet()) {
+			int id = RegistryEssentia.INSTANCE.getRawId(entry.getKey());
+			if (id >= 0 && id < essentia) {
+				vector[id] = entry.getValue();
+			}
+		}
+		return vector;
+	}
+
+	// Stable across runs with the same content: built from identifiers, never raw ids alone
+	long hash() {
+		long hash = 0xcbf29ce484222325L;
+		for (String name : itemNames) {
+			hash = mix(hash, name.hashCode());
+		}
+		for (String name : essentiaNames) {
+			hash = mix(hash, name.hashCode());
+		}
+		for (int id = 0; id < items; id++) {
+			hash = mix(hash, remainders[id]);
+			if (seeds[id] != null) {
+				hash = mix(hash, Arrays.hashCode(seeds[id]));
+			}
+		}
+		for (int recipe = 0; recipe < outputs.length; recipe++) {
+			hash = mix(hash, outputs[recipe]);
+			hash = mix(hash, counts[recipe]);
+			hash = mix(hash, Arrays.deepHashCode(inputs[recipe]));
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, int value) {
+		return (hash ^ value) * 0x100000001b3L;
+	}
+
+	// Propagates values outward from the seeds. Each round computes every still-unknown item from the
+	// previous round's values in parallel (Jacobi style); an item keeps the first value it gets, taken
+	// from its cheapest usable recipe. That gives each item its shortest derivation and makes cycles
+	// harmless, since a value is never revised once set.
+	Map<String, EssentiaStack> solve() {
+		double[][] current = seeds.clone();
+		for (int round = 0; round < MAX_ROUNDS; round++) {
+			double[][] previous = current;
+			double[][] next = previous.clone();
+			int found = IntStream.range(0, items).parallel()
+				.filter((item) -> previous[item] == null && producers[item] != null)
+				.map((item) -> {
+					next[item] = cheapest(item, previous);
+					return (next[item] != null) ? 1 : 0;
+				})
+				.sum();
+			current = next;
+			if (found == 0) {
+				break;
+			}
+		}
+
+		Map<String, EssentiaStack> derived = new LinkedHashMap<>();
+		for (int item = 0; item < items; item++) {
+			if (seeds[item] == null && current[item] != null) {
+				EssentiaStack stack = new EssentiaStack();
+				for (int id = 0; id < essentia; id++) {
+					int amount = (int) current[item][id];
+					if (amount > 0) {
+						stack.add(RegistryEssentia.INSTANCE.get(id), amount);
+					}
+				}
+				if (!stack.isEmpty()) {
+					derived.put(itemNames[item], stack);
+				}
+			}
+		}
+		return derived;
+	}
+
+	private double[] cheapest(int item, double[][] values) {
+		double[] best = null;
+		double bestTotal = Double.MAX_VALUE;
+		for (int recipe : producers[item]) {
+			double[] sum = new double[essentia];
+			boolean usable = true;
+			for (int[] options : inputs[recipe]) {
+				double[] option = cheapestOption(options, values);
+				if (option == null) {
+					usable = false;
+					break;
+				}
+				for (int id = 0; id < essentia; id++) {
+					sum[id] += option[id];
+				}
+			}
+			if (!usable) {
+				continue;
+			}
+			double total = 0;
+			for (int id = 0; id < essentia; id++) {
+				sum[id] = Math.max(0, sum[id]) / counts[recipe];
+				total += sum[id];
+			}
+			if (total > 0 && total < bestTotal) {
+				best = sum;
+				bestTotal = total;
+			}
+		}
+		return best;
+	}
+
+	// Cheapest known item for one ingredient slot, less whatever it leaves behind (e.g. the bucket)
+	private double[] cheapestOption(int[] options, double[][] values) {
+		double[] best = null;
+		double bestTotal = Double.MAX_VALUE;
+		for (int option : options) {
+			double[] value = values[option];
+			if (value == null) {
+				continue;
+			}
+			int remainder = remainders[option];
+			if (remainder >= 0 && values[remainder] != null) {
+				double[] net = new double[essentia];
+				for (int id = 0; id < essentia; id++) {
+					net[id] = value[id] - values[remainder][id];
+				}
+				value = net;
+			}
+			double total = 0;
+			for (double amount : value) {
+				total += amount;
+			}
+			if (total < bestTotal) {
+				best = value;
+				bestTotal = total;
+			}
+		}
+		return best;
+	}
+
+}
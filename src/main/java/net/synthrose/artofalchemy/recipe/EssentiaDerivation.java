@@ -0,0 +1,183 @@
+package net.synthrose.artofalchemy.recipe;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.recipe.Ingredient;
+import net.minecraft.recipe.RecipeManager;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.registry.Registry;
+import net.synthrose.artofalchemy.ArtOfAlchemy;
+import net.synthrose.artofalchemy.essentia.EssentiaStack;
+
+// Fills in dissolution recipes for items that have none, by pricing them through the recipes that
+// craft them. The graph is snapshotted on the server thread after each data pack reload and solved
+// in the background; until the solve finishes (or a cached result is loaded) the dissolver only sees
+// the explicit recipes. Derived recipes never replace an explicit one.
+public class EssentiaDerivation {
+
+	private static final int CACHE_FORMAT = 1;
+	// Cached solves kept on disk, one per world and data pack set seen recently
+	private static final int CACHE_FILES = 8;
+
+	private static final AtomicInteger version = new AtomicInteger();
+	private static volatile List<RecipeDissolution> derived = Collections.emptyList();
+	private static volatile Map<String, EssentiaStack> solved = null;
+	private static WeakReference<RecipeManager> manager = new WeakReference<>(null);
+	private static int generation = -1;
+	private static int request = 0;
+
+	// Starts a solve when the recipes have changed and publishes a finished one. Returns a version
+	// that increases every time the derived recipes change. Call from the server thread.
+	public static synchronized int update(RecipeManager manager) {
+		int current = AoARecipes.getGeneration();
+		if (current != generation || manager != EssentiaDerivation.manager.get()) {
+			EssentiaDerivation.manager = new WeakReference<>(manager);
+			generation = current;
+			start(manager);
+		}
+		Map<String, EssentiaStack> result = solved;
+		if (result != null) {
+			solved = null;
+			derived = toRecipes(result);
+			version.incrementAndGet();
+		}
+		return version.get();
+	}
+
+	// The derived recipes as of the last update(), in registry order
+	public static List<RecipeDissolution> getDerived() {
+		return derived;
+	}
+
+	public static int getVersion() {
+		return version.get();
+	}
+
+	private static void start(RecipeManager manager) {
+		if (!derived.isEmpty()) {
+			derived = Collections.emptyList();
+			version.incrementAndGet();
+		}
+		solved = null;
+		int token = ++request;
+		DerivationGraph graph = DerivationGraph.of(manager);
+		CompletableFuture.supplyAsync(() -> solve(graph), ForkJoinPool.commonPool())
+			.whenComplete((result, error) -> {
+				if (error != null) {
+					ArtOfAlchemy.log(Level.ERROR, "Essentia derivation failed: " + error);
+				} else {
+					synchronized (EssentiaDerivation.class) {
+						// A reload may have started a newer solve in the meantime
+						if (token == request) {
+							solved = result;
+						}
+					}
+				}
+			});
+	}
+
+	private static Map<String, EssentiaStack> solve(DerivationGraph graph) {
+		long hash = graph.hash();
+		File dir = new File(FabricLoader.getInstance().getGameDirectory(), ArtOfAlchemy.MOD_ID + "/derived");
+		File file = new File(dir, String.format("%016x.dat", hash));
+		Map<String, EssentiaStack> result = read(file);
+		if (result != null) {
+			// Marks it recently used, so pruning drops other caches first
+			file.setLastModified(System.currentTimeMillis());
+			ArtOfAlchemy.log(Level.INFO, "Loaded " + result.size() + " derived essentia values from cache");
+			return result;
+		}
+
+		long start = System.nanoTime();
+		result = graph.solve();
+		ArtOfAlchemy.log(Level.INFO, "Derived essentia values for " + result.size() + " items in "
+			+ (System.nanoTime() - start) / 1000000 + " ms");
+		write(dir, file, result);
+		return result;
+	}
+
+	private static Map<String, EssentiaStack> read(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try (InputStream in = new FileInputStream(file)) {
+			CompoundTag tag = NbtIo.readCompressed(in);
+			if (tag.getInt("format") != CACHE_FORMAT) {
+				return null;
+			}
+			CompoundTag values = tag.getCompound("values");
+			Map<String, EssentiaStack> result = new LinkedHashMap<>();
+			for (String key : values.getKeys()) {
+				result.put(key, new EssentiaStack(values.getCompound(key)));
+			}
+			return result;
+		} catch (IOException | RuntimeException e) {
+			ArtOfAlchemy.log(Level.WARN, "Ignoring unreadable derived essentia cache " + file.getName());
+			return null;
+		}
+	}
+
+	private static void write(File dir, File file, Map<String, EssentiaStack> result) {
+		CompoundTag values = new CompoundTag();
+		result.forEach((key, stack) -> values.put(key, stack.toTag()));
+		CompoundTag tag = new CompoundTag();
+		tag.putInt("format", CACHE_FORMAT);
+		tag.put("values", values);
+		try {
+			dir.mkdirs();
+			try (OutputStream out = new FileOutputStream(file)) {
+				NbtIo.writeCompressed(tag, out);
+			}
+		} catch (IOException e) {
+			ArtOfAlchemy.log(Level.WARN, "Could not write derived essentia cache: " + e.getMessage());
+		}
+		prune(dir);
+	}
+
+	// Deletes all but the most recently used caches
+	private static void prune(File dir) {
+		File[] files = dir.listFiles((parent, name) -> name.endsWith(".dat"));
+		if (files == null || files.length <= CACHE_FILES) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+		for (int i = CACHE_FILES; i < files.length; i++) {
+			files[i].delete();
+		}
+	}
+
+	private static List<RecipeDissolution> toRecipes(Map<String, EssentiaStack> result) {
+		List<RecipeDissolution> recipes = new ArrayList<>(result.size());
+		result.forEach((key, essentia) -> {
+			Identifier itemId = new Identifier(key);
+			Item item = Registry.ITEM.get(itemId);
+			Identifier id = ArtOfAlchemy.id("derived/" + itemId.getNamespace() + "/" + itemId.getPath());
+			recipes.add(new RecipeDissolution(id, "", Ingredient.ofItems(item), essentia, ItemStack.EMPTY));
+		});
+		return Collections.unmodifiableList(recipes);
+	}
+
+}
@@ -0,0 +1,105 @@
+package net.synthrose.artofalchemy.recipe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.minecraft.recipe.Recipe;
+import net.minecraft.recipe.RecipeManager;
+import net.minecraft.world.World;
+import net.synthrose.artofalchemy.essentia.Essentia;
+import net.synthrose.artofalchemy.essentia.RegistryEssentia;
+
+// Reverse lookup from each essentia to the dissolution recipes that yield it and the synthesis
+// recipes that consume it, both sorted by amount per item, most first. Built once per recipe set and
+// kept per recipe manager, so the client's and the integrated server's managers never share an index.
+// RecipeManager calls invalidate() whenever it loads or receives recipes.
+public class EssentiaIndex {
+
+	private static final Map<RecipeManager, EssentiaIndex> INDEXES = new WeakHashMap<>();
+
+	private final List<List<RecipeDissolution>> producers = new ArrayList<>();
+	private final List<List<RecipeSynthesis>> consumers = new ArrayList<>();
+	private final int derivedVersion;
+
+	private EssentiaIndex(RecipeManager manager, boolean derived) {
+		int size = RegistryEssentia.INSTANCE.getRawIdBound();
+		for (int i = 0; i < size; i++) {
+			producers.add(new ArrayList<>());
+			consumers.add(new ArrayList<>());
+		}
+		for (Recipe<?> recipe : manager.values()) {
+			if (recipe instanceof RecipeDissolution) {
+				addProducer((RecipeDissolution) recipe);
+			} else if (recipe instanceof RecipeSynthesis) {
+				RecipeSynthesis synthesis = (RecipeSynthesis) recipe;
+				synthesis.getEssentia().forEach((essentia, amount) -> add(consumers, essentia, synthesis));
+			}
+		}
+		// Derived values only exist on the server
+		this.derivedVersion = derived ? EssentiaDerivation.getVersion() : -1;
+		if (derived) {
+			EssentiaDerivation.getDerived().forEach(this::addProducer);
+		}
+		for (int i = 0; i < size; i++) {
+			Essentia essentia = RegistryEssentia.INSTANCE.get(i);
+			if (essentia == null) {
+				// Unused raw id
+				continue;
+			}
+			producers.get(i).sort(Comparator.comparingInt((RecipeDissolution recipe) ->
+				-recipe.getEssentia().getCount(essentia)).thenComparing((recipe) -> recipe.getId().toString()));
+			consumers.get(i).sort(Comparator.comparingInt((RecipeSynthesis recipe) ->
+				-recipe.getEssentia().getCount(essentia)).thenComparing((recipe) -> recipe.getId().toString()));
+		}
+	}
+
+	private void addProducer(RecipeDissolution recipe) {
+		recipe.getEssentia().forEach((essentia, amount) -> add(producers, essentia, recipe));
+	}
+
+	// Essentia registered after the index was sized are left out until it's rebuilt
+	private static <R> void add(List<List<R>> lists, Essentia essentia, R recipe) {
+		int id = rawId(essentia);
+		if (id >= 0 && id < lists.size()) {
+			lists.get(id).add(recipe);
+		}
+	}
+
+	private static int rawId(Essentia essentia) {
+		return RegistryEssentia.INSTANCE.getRawId(essentia);
+	}
+
+	public static synchronized EssentiaIndex get(World world) {
+		RecipeManager manager = world.getRecipeManager();
+		boolean derived = !world.isClient();
+		EssentiaIndex index = INDEXES.get(manager);
+		if (index == null || (derived && index.derivedVersion != EssentiaDerivation.getVersion())) {
+			index = new EssentiaIndex(manager, derived);
+			INDEXES.put(manager, index);
+		}
+		return index;
+	}
+
+	public static synchronized void invalidate(RecipeManager manager) {
+		INDEXES.remove(manager);
+	}
+
+	// Dissolution recipes yielding this essentia, by yield per item dissolved
+	public List<RecipeDissolution> getProducers(Essentia essentia) {
+		int id = rawId(essentia);
+		return (id >= 0 && id < producers.size()) ? Collections.unmodifiableList(producers.get(id))
+			: Collections.emptyList();
+	}
+
+	// Synthesis recipes consuming this essentia, by cost per item synthesized
+	public List<RecipeSynthesis> getConsumers(Essentia essentia) {
+		int id = rawId(essentia);
+		return (id >= 0 && id < consumers.size()) ? Collections.unmodifiableList(consumers.get(id))
+			: Collections.emptyList();
+	}
+
+}
@@ -0,0 +1,249 @@
+package net.synthrose.artofalchemy.recipe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import net.fabricmc.fabric.api.tag.TagRegistry;
+import net.minecraft.item.ItemStack;
+import net.minecraft.recipe.Ingredient;
+import net.minecraft.recipe.Recipe;
+import net.minecraft.recipe.ShapedRecipe;
+import net.minecraft.recipe.ShapelessRecipe;
+import net.minecraft.util.DefaultedList;
+import net.minecraft.util.DyeColor;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.registry.Registry;
+import net.synthrose.artofalchemy.ArtOfAlchemy;
+import net.synthrose.artofalchemy.MateriaRank;
+import net.synthrose.artofalchemy.essentia.AoAEssentia;
+import net.synthrose.artofalchemy.essentia.Essentia;
+import net.synthrose.artofalchemy.essentia.RegistryEssentia;
+
+// The vessel and materia downgrade recipes, built from the essentia registry and MateriaRank instead
+// of written by hand. The same definitions are written out as JSON by the datagen task, or turned
+// straight into recipe objects at reload time when AoAConfig.builtinRecipes is set.
+public class GeneratedRecipes {
+
+	private static final Map<Essentia, DyeColor> VESSEL_DYES = new LinkedHashMap<>();
+
+	static {
+		registerVesselDye(AoAEssentia.MERCURY, DyeColor.MAGENTA);
+		registerVesselDye(AoAEssentia.VENUS, DyeColor.PINK);
+		registerVesselDye(AoAEssentia.TELLUS, DyeColor.GREEN);
+		registerVesselDye(AoAEssentia.MARS, DyeColor.RED);
+		registerVesselDye(AoAEssentia.JUPITER, DyeColor.ORANGE);
+		registerVesselDye(AoAEssentia.SATURN, DyeColor.LIME);
+		registerVesselDye(AoAEssentia.URANUS, DyeColor.CYAN);
+		registerVesselDye(AoAEssentia.NEPTUNE, DyeColor.BLUE);
+		registerVesselDye(AoAEssentia.APOLLO, DyeColor.YELLOW);
+		registerVesselDye(AoAEssentia.DIANA, DyeColor.LIGHT_BLUE);
+		registerVesselDye(AoAEssentia.CERES, DyeColor.BROWN);
+		registerVesselDye(AoAEssentia.PLUTO, DyeColor.BLACK);
+		registerVesselDye(AoAEssentia.VOID, DyeColor.PURPLE);
+	}
+
+	private static List<Entry> entries;
+
+	// Essentia without a dye only get the recipe that empties their vessel
+	public static void registerVesselDye(Essentia essentia, DyeColor dye) {
+		VESSEL_DYES.put(essentia, dye);
+		entries = null;
+	}
+
+	// Every generated recipe, in a fixed order: vessels by essentia registry order, then downgrades
+	public static synchronized List<Entry> getEntries() {
+		if (entries == null) {
+			List<Entry> list = new ArrayList<>();
+			addVessel(list, "all", ArtOfAlchemy.id("essentia_vessel"), "minecraft:glass", "minecraft:quartz");
+			for (Essentia essentia : RegistryEssentia.INSTANCE) {
+				Identifier id = RegistryEssentia.INSTANCE.getId(essentia);
+				String name = id.getNamespace().equals(ArtOfAlchemy.MOD_ID) ? id.getPath()
+					: id.getNamespace() + "_" + id.getPath();
+				Identifier vessel = new Identifier(id.getNamespace(), "essentia_vessel_" + id.getPath());
+				DyeColor dye = VESSEL_DYES.get(essentia);
+				if (dye != null) {
+					addVessel(list, name, vessel, "minecraft:" + dye.getName() + "_stained_glass",
+						"minecraft:" + dye.getName() + "_dye");
+				} else {
+					list.add(new Entry(ArtOfAlchemy.id("vessels/" + name + "_empty"), vessel, 1)
+						.ingredient(item(vessel.toString())));
+				}
+			}
+
+			MateriaRank[] ranks = MateriaRank.values();
+			for (int i = 0; i < ranks.length; i++) {
+				for (int j = i + 1; j < ranks.length; j++) {
+					// Combining two ranks gives two of the rank halfway between, rounded down
+					MateriaRank result = ofTier((ranks[i].getTier() + ranks[j].getTier()) / 2);
+					String first = ranks[i].name().toLowerCase();
+					String second = ranks[j].name().toLowerCase();
+					list.add(new Entry(ArtOfAlchemy.id("materia_downgrade/" + first + "_" + second),
+							materia(result), 2)
+						.ingredient(item(materia(ranks[i]).toString()))
+						.ingredient(item(materia(ranks[j]).toString())));
+				}
+			}
+			entries = Collections.unmodifiableList(list);
+		}
+		return entries;
+	}
+
+	private static void addVessel(List<Entry> list, String name, Identifier vessel, String glass, String dye) {
+		list.add(new Entry(ArtOfAlchemy.id("vessels/" + name), vessel, 1)
+			.pattern(" A ", "GBG", " Q ")
+			.key('B', item("minecraft:bucket"))
+			.key('A', item("artofalchemy:azoth"))
+			.key('G', item(glass))
+			.key('Q', item("minecraft:quartz")));
+		list.add(new Entry(ArtOfAlchemy.id("vessels/" + name + "_empty"), vessel, 1)
+			.ingredient(item(vessel.toString())));
+		list.add(new Entry(ArtOfAlchemy.id("vessels/" + name + "_redye"), vessel, 1)
+			.ingredient(tag("artofalchemy:essentia_vessel"))
+			.ingredient(item(dye)));
+	}
+
+	private static Identifier materia(MateriaRank rank) {
+		return ArtOfAlchemy.id("materia_" + rank.name().toLowerCase());
+	}
+
+	private static MateriaRank ofTier(int tier) {
+		for (MateriaRank rank : MateriaRank.values()) {
+			if (rank.getTier() == tier) {
+				return rank;
+			}
+		}
+		throw new IllegalArgumentException("No materia of tier " + tier);
+	}
+
+	private static Ref item(String id) {
+		return new Ref(new Identifier(id), false);
+	}
+
+	private static Ref tag(String id) {
+		return new Ref(new Identifier(id), true);
+	}
+
+	// An ingredient that names a single item or an item tag
+	public static class Ref {
+
+		private final Identifier id;
+		private final boolean tag;
+
+		private Ref(Identifier id, boolean tag) {
+			this.id = id;
+			this.tag = tag;
+		}
+
+		public JsonObject toJson() {
+			JsonObject json = new JsonObject();
+			json.addProperty(tag ? "tag" : "item", id.toString());
+			return json;
+		}
+
+		public Ingredient toIngredient() {
+			if (tag) {
+				return Ingredient.fromTag(TagRegistry.item(id));
+			} else {
+				return Ingredient.ofItems(Registry.ITEM.get(id));
+			}
+		}
+
+	}
+
+	// One crafting recipe; shaped if it has a pattern, shapeless otherwise
+	public static class Entry {
+
+		private final Identifier id;
+		private final Identifier result;
+		private final int count;
+		private String[] pattern;
+		private final Map<Character, Ref> key = new LinkedHashMap<>();
+		private final List<Ref> ingredients = new ArrayList<>();
+
+		private Entry(Identifier id, Identifier result, int count) {
+			this.id = id;
+			this.result = result;
+			this.count = count;
+		}
+
+		private Entry pattern(String... rows) {
+			this.pattern = rows;
+			return this;
+		}
+
+		private Entry key(char symbol, Ref ref) {
+			key.put(symbol, ref);
+			return this;
+		}
+
+		private Entry ingredient(Ref ref) {
+			ingredients.add(ref);
+			return this;
+		}
+
+		public Identifier getId() {
+			return id;
+		}
+
+		public JsonObject toJson() {
+			JsonObject json = new JsonObject();
+			if (pattern != null) {
+				json.addProperty("type", "minecraft:crafting_shaped");
+				JsonArray rows = new JsonArray();
+				for (String row : pattern) {
+					rows.add(row);
+				}
+				json.add("pattern", rows);
+				JsonObject keys = new JsonObject();
+				key.forEach((symbol, ref) -> keys.add(String.valueOf(symbol), ref.toJson()));
+				json.add("key", keys);
+			} else {
+				json.addProperty("type", "minecraft:crafting_shapeless");
+				JsonArray array = new JsonArray();
+				for (Ref ref : ingredients) {
+					array.add(ref.toJson());
+				}
+				json.add("ingredients", array);
+			}
+			JsonObject output = new JsonObject();
+			output.addProperty("item", result.toString());
+			if (count != 1) {
+				output.addProperty("count", count);
+			}
+			json.add("result", output);
+			return json;
+		}
+
+		public Recipe<?> toRecipe() {
+			ItemStack output = new ItemStack(Registry.ITEM.get(result), count);
+			if (pattern != null) {
+				int width = pattern[0].length();
+				int height = pattern.length;
+				DefaultedList<Ingredient> inputs = DefaultedList.ofSize(width * height, Ingredient.EMPTY);
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						Ref ref = key.get(pattern[y].charAt(x));
+						if (ref != null) {
+							inputs.set(y * width + x, ref.toIngredient());
+						}
+					}
+				}
+				return new ShapedRecipe(id, "", width, height, inputs, output);
+			} else {
+				DefaultedList<Ingredient> inputs = DefaultedList.of();
+				for (Ref ref : ingredients) {
+					inputs.add(ref.toIngredient());
+				}
+				return new ShapelessRecipe(id, "", output, inputs);
+			}
+		}
+
+	}
+
+}
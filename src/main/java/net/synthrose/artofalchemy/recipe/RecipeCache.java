@@ -0,0 +1,46 @@
+package net.synthrose.artofalchemy.recipe;
+
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.recipe.Recipe;
+import net.minecraft.world.World;
+
+// Remembers the last recipe a machine matched, along with the slot contents it matched against.
+// The recipe index is only consulted again once that slot's item changes or data packs reload.
+public class RecipeCache<T extends Recipe<Inventory>> {
+	
+	private final RecipeIndex<T> index;
+	private ItemStack key = ItemStack.EMPTY;
+	private T recipe = null;
+	private int generation = -1;
+	
+	public RecipeCache(RecipeIndex<T> index) {
+		this.index = index;
+	}
+	
+	public T getRecipe(Inventory inv, World world) {
+		long start = System.nanoTime();
+		ItemStack stack = inv.getInvStack(index.getSlot());
+		int current = index.update(world.getRecipeManager());
+		boolean hit = (generation == current && matchesKey(stack));
+		if (!hit) {
+			recipe = index.getFirstMatch(inv, world);
+			key = stack.copy();
+			generation = current;
+		}
+		index.getStats().record(hit, System.nanoTime() - start);
+		return recipe;
+	}
+	
+	// Counts never affect matching, so only the item, damage and NBT are compared
+	private boolean matchesKey(ItemStack stack) {
+		return ItemStack.areItemsEqualIgnoreDamage(key, stack) && ItemStack.areTagsEqual(key, stack);
+	}
+	
+	public void invalidate() {
+		key = ItemStack.EMPTY;
+		recipe = null;
+		generation = -1;
+	}
+	
+}
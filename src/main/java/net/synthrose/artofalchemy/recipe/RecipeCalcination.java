@@ -20,6 +20,7 @@ public class RecipeCalcination implements Recipe<Inventory> {
 	protected ItemStack output;
 	protected int cost;
 	protected ItemStack container;
+	protected boolean hasContainer;
 	
 	public RecipeCalcination(Identifier id, String group, Ingredient input, ItemStack output, int cost, ItemStack container) {
 		this.id = id;
@@ -28,6 +29,7 @@ public class RecipeCalcination implements Recipe<Inventory> {
 		this.cost = cost;
 		this.output = output;
 		this.container = container;
+		this.hasContainer = !container.isEmpty();
 	}
 
 	@Override
@@ -62,6 +64,10 @@ public class RecipeCalcination implements Recipe<Inventory> {
 		return container;
 	}
 	
+	public boolean hasContainer() {
+		return hasContainer;
+	}
+	
 	@Override
 	public RecipeType<?> getType() {
 		return AoARecipes.CALCINATION;
@@ -13,21 +13,30 @@ import net.minecraft.util.Identifier;
 import net.minecraft.world.World;
 import net.synthrose.artofalchemy.block.AoABlocks;
 import net.synthrose.artofalchemy.essentia.EssentiaStack;
+import net.synthrose.artofalchemy.essentia.FrozenEssentiaStack;
 
 public class RecipeDissolution implements Recipe<Inventory> {
 	
+	public static final double SPEED_MOD = 2.0;
+	public static final int MIN_TIME = 20;
+	
 	protected Identifier id;
 	protected String group;
 	protected Ingredient input;
-	protected EssentiaStack essentia;
+	protected FrozenEssentiaStack essentia;
 	protected ItemStack container;
+	// Derived once when the recipe is loaded, so machines only read fields while ticking
+	protected boolean hasContainer;
+	protected int processingTime;
 	
 	public RecipeDissolution(Identifier id, String group, Ingredient input, EssentiaStack essentia, ItemStack container) {
 		this.id = id;
 		this.group = group;
 		this.input = input;
-		this.essentia = essentia;
+		this.essentia = essentia.freeze();
 		this.container = container;
+		this.hasContainer = !container.isEmpty();
+		this.processingTime = Math.max(MIN_TIME, (int) (this.essentia.getCount() / SPEED_MOD));
 	}
 
 	@Override
@@ -44,7 +53,7 @@ public class RecipeDissolution implements Recipe<Inventory> {
 		return input;
 	}
 	
-	public EssentiaStack getEssentia() {
+	public FrozenEssentiaStack getEssentia() {
 		return essentia;
 	}
 	
@@ -62,6 +71,14 @@ public class RecipeDissolution implements Recipe<Inventory> {
 		return container;
 	}
 	
+	public boolean hasContainer() {
+		return hasContainer;
+	}
+	
+	public int getProcessingTime() {
+		return processingTime;
+	}
+	
 	@Override
 	public RecipeType<?> getType() {
 		return AoARecipes.DISSOLUTION;
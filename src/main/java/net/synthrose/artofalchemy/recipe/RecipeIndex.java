@@ -0,0 +1,136 @@
+package net.synthrose.artofalchemy.recipe;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.recipe.Ingredient;
+import net.minecraft.recipe.Recipe;
+import net.minecraft.recipe.RecipeManager;
+import net.minecraft.recipe.RecipeType;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.world.World;
+
+// Maps an item to the recipes of one type whose key ingredient can match it, so a lookup only tests
+// a handful of candidates instead of every recipe. Ingredients that can't be expanded to a fixed set
+// of items go in a residual list that is tested for every item. Candidates keep the recipe manager's
+// order, so the result is the same recipe getFirstMatch would return. Subclasses can add recipes
+// that don't come from data packs; those are tested after the manager's own.
+public class RecipeIndex<T extends Recipe<Inventory>> {
+	
+	private final RecipeType<T> type;
+	private final Function<T, Ingredient> key;
+	private final int slot;
+	private final RecipeStats stats;
+	private Map<Item, List<T>> candidates = Collections.emptyMap();
+	private List<T> residual = Collections.emptyList();
+	private WeakReference<RecipeManager> manager = new WeakReference<>(null);
+	private int generation = -1;
+	
+	public RecipeIndex(RecipeType<T> type, Function<T, Ingredient> key, int slot) {
+		this.type = type;
+		this.key = key;
+		this.slot = slot;
+		this.stats = new RecipeStats(type.toString());
+	}
+	
+	public RecipeType<T> getType() {
+		return type;
+	}
+	
+	// Inventory slot the key ingredient is tested against
+	public int getSlot() {
+		return slot;
+	}
+	
+	public RecipeStats getStats() {
+		return stats;
+	}
+	
+	public T getFirstMatch(Inventory inv, World world) {
+		update(world.getRecipeManager());
+		ItemStack stack = inv.getInvStack(slot);
+		int tested = 0;
+		for (T recipe : getCandidates(stack.getItem())) {
+			tested++;
+			if (recipe.matches(inv, world)) {
+				stats.addCandidates(tested);
+				return recipe;
+			}
+		}
+		stats.addCandidates(tested);
+		return null;
+	}
+	
+	public List<T> getCandidates(Item item) {
+		return candidates.getOrDefault(item, residual);
+	}
+	
+	// Rebuilds the index if the recipes have changed, and returns the generation it was built for
+	public int update(RecipeManager manager) {
+		int current = AoARecipes.getGeneration() + getExtraVersion(manager);
+		if (current != generation || manager != this.manager.get()) {
+			rebuild(manager);
+			this.manager = new WeakReference<>(manager);
+			generation = current;
+		}
+		return generation;
+	}
+	
+	// Increases whenever getExtraRecipes() would return something different
+	protected int getExtraVersion(RecipeManager manager) {
+		return 0;
+	}
+	
+	protected Collection<T> getExtraRecipes(RecipeManager manager) {
+		return Collections.emptyList();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void rebuild(RecipeManager manager) {
+		Map<Item, List<T>> candidates = new IdentityHashMap<>();
+		List<T> residual = new ArrayList<>();
+		List<T> recipes = new ArrayList<>();
+		for (Recipe<?> entry : manager.values()) {
+			if (entry.getType() == type) {
+				recipes.add((T) entry);
+			}
+		}
+		recipes.addAll(getExtraRecipes(manager));
+		for (T recipe : recipes) {
+			Ingredient ingredient = key.apply(recipe);
+			IntList ids = (ingredient != null) ? ingredient.getIds() : null;
+			if (ids == null || ids.isEmpty()) {
+				// Residual recipes are candidates for every item, in order with the rest
+				residual.add(recipe);
+				for (List<T> list : candidates.values()) {
+					list.add(recipe);
+				}
+			} else {
+				for (int i = 0; i < ids.size(); i++) {
+					Item item = Registry.ITEM.get(ids.getInt(i));
+					List<T> list = candidates.get(item);
+					if (list == null) {
+						list = new ArrayList<>(residual);
+						candidates.put(item, list);
+					}
+					if (list.isEmpty() || list.get(list.size() - 1) != recipe) {
+						list.add(recipe);
+					}
+				}
+			}
+		}
+		this.candidates = candidates;
+		this.residual = residual;
+	}
+	
+}
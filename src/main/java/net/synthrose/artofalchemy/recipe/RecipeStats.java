@@ -0,0 +1,133 @@
+package net.synthrose.artofalchemy.recipe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+
+import net.fabricmc.fabric.api.event.server.ServerTickCallback;
+import net.synthrose.artofalchemy.AoAConfig;
+import net.synthrose.artofalchemy.ArtOfAlchemy;
+
+// Counters for one recipe type's lookups. Recipe resolution only happens on the server thread, so
+// plain fields are enough. Latencies go in power-of-two nanosecond buckets: bucket i holds samples
+// in [2^i, 2^(i+1)) ns, which keeps recording to a couple of instructions.
+public class RecipeStats {
+
+	private static final int BUCKETS = 40;
+	private static final List<RecipeStats> ALL = new ArrayList<>();
+	private static int ticks = 0;
+	private static long loggedCalls = 0;
+
+	private final String name;
+	private long calls = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long candidates = 0;
+	private long totalNanos = 0;
+	private final long[] histogram = new long[BUCKETS];
+
+	public RecipeStats(String name) {
+		this.name = name;
+		ALL.add(this);
+	}
+
+	public static List<RecipeStats> getAll() {
+		return ALL;
+	}
+
+	// Logs every type's summary each statsLogInterval ticks, skipping intervals with no new lookups
+	public static void registerLogging() {
+		ServerTickCallback.EVENT.register((server) -> {
+			if (AoAConfig.statsLogInterval <= 0 || ++ticks < AoAConfig.statsLogInterval) {
+				return;
+			}
+			ticks = 0;
+			long calls = 0;
+			for (RecipeStats stats : ALL) {
+				calls += stats.calls;
+			}
+			if (calls != loggedCalls) {
+				loggedCalls = calls;
+				for (RecipeStats stats : ALL) {
+					ArtOfAlchemy.log(Level.INFO, stats.summarize());
+				}
+			}
+		});
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void record(boolean hit, long nanos) {
+		calls++;
+		if (hit) {
+			hits++;
+		} else {
+			misses++;
+		}
+		totalNanos += nanos;
+		int bucket = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+		histogram[Math.min(bucket, BUCKETS - 1)]++;
+	}
+
+	// Number of recipes whose matches() was called during an index lookup
+	public void addCandidates(int tested) {
+		candidates += tested;
+	}
+
+	public long getCalls() {
+		return calls;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getCandidates() {
+		return candidates;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	// Upper bound of the bucket holding the given fraction of samples, so an estimate rounded up
+	public long getPercentileNanos(double fraction) {
+		long target = (long) Math.ceil(calls * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += histogram[i];
+			if (seen >= target && seen > 0) {
+				return 1L << (i + 1);
+			}
+		}
+		return 0;
+	}
+
+	public void reset() {
+		calls = 0;
+		hits = 0;
+		misses = 0;
+		candidates = 0;
+		totalNanos = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram[i] = 0;
+		}
+	}
+
+	public String summarize() {
+		if (calls == 0) {
+			return name + ": no lookups";
+		}
+		return String.format("%s: %d lookups, %.1f%% cached, %.2f candidates/miss, avg %d ns, p50 <%d ns, p99 <%d ns",
+			name, calls, 100.0 * hits / calls, (misses > 0) ? (double) candidates / misses : 0.0,
+			totalNanos / calls, getPercentileNanos(0.5), getPercentileNanos(0.99));
+	}
+
+}
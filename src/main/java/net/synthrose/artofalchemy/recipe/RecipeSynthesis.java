@@ -13,17 +13,31 @@ import net.minecraft.util.Identifier;
 import net.minecraft.world.World;
 import net.synthrose.artofalchemy.block.AoABlocks;
 import net.synthrose.artofalchemy.essentia.EssentiaStack;
+import net.synthrose.artofalchemy.essentia.FrozenEssentiaStack;
+import net.synthrose.artofalchemy.MateriaRank;
 import net.synthrose.artofalchemy.item.ItemMateria;
+import net.synthrose.artofalchemy.tag.ItemBitSet;
 
 public class RecipeSynthesis implements Recipe<Inventory> {
 	
+	public static final double SPEED_MOD = 2.0;
+	public static final int MIN_TIME = 40;
+	// Materia tiers run from 1 (non-materia and rank F) up to one past the highest rank
+	private static final int TIERS = MateriaRank.values().length + 1;
+	
 	protected Identifier id;
 	protected String group;
 	protected Ingredient target;
 	protected Ingredient materia;
-	protected EssentiaStack essentia;
+	protected FrozenEssentiaStack essentia;
 	protected Ingredient container;
 	protected int cost;
+	// Derived once when the recipe is loaded, so machines only read fields while ticking
+	protected boolean hasContainer;
+	protected int[] timeByTier = new int[TIERS + 1];
+	protected int[] xpByTier = new int[TIERS + 1];
+	// Resolved on first use, since tags may not be loaded yet when the recipe is
+	private ItemBitSet containerItems = null;
 	
 	public RecipeSynthesis(Identifier id, String group, Ingredient target, Ingredient materia, EssentiaStack essentia,
 			Ingredient container, int cost) {
@@ -31,9 +45,32 @@ public class RecipeSynthesis implements Recipe<Inventory> {
 		this.group = group;
 		this.target = target;
 		this.materia = materia;
-		this.essentia = essentia;
+		this.essentia = essentia.freeze();
 		this.container = container;
 		this.cost = cost;
+		this.hasContainer = !container.isEmpty();
+		for (int tier = 1; tier <= TIERS; tier++) {
+			timeByTier[tier] = computeTime(tier);
+			xpByTier[tier] = computeXp(tier);
+		}
+	}
+	
+	private int computeTime(int tier) {
+		int time = (int) (essentia.getCount() / SPEED_MOD) + tier * cost * 5;
+		return Math.max(MIN_TIME, time);
+	}
+	
+	private int computeXp(int tier) {
+		return Math.max(1, cost * tier + (essentia.getCount() / 48));
+	}
+	
+	// Materia speed and XP tier of the stack in the materia slot; anything that isn't materia counts as tier 1
+	public static int getTier(ItemStack materia) {
+		if (materia.getItem() instanceof ItemMateria) {
+			return ((ItemMateria) materia.getItem()).getTier() + 1;
+		} else {
+			return 1;
+		}
 	}
 
 	@Override
@@ -51,11 +88,15 @@ public class RecipeSynthesis implements Recipe<Inventory> {
 		return id;
 	}
 	
+	public Ingredient getTarget() {
+		return target;
+	}
+	
 	public Ingredient getMateria() {
 		return materia;
 	}
 	
-	public EssentiaStack getEssentia() {
+	public FrozenEssentiaStack getEssentia() {
 		return essentia;
 	}
 	
@@ -68,16 +109,32 @@ public class RecipeSynthesis implements Recipe<Inventory> {
 		return container;
 	}
 	
+	public boolean hasContainer() {
+		return hasContainer;
+	}
+	
+	// Same as getContainer().test(stack), as a bit test
+	public boolean isContainer(ItemStack stack) {
+		if (containerItems == null) {
+			containerItems = ItemBitSet.of(container.getIds());
+		}
+		return containerItems.contains(stack);
+	}
+	
 	public int getCost() {
 		return cost;
 	}
 	
+	public int getProcessingTime(int tier) {
+		return (tier >= 1 && tier <= TIERS) ? timeByTier[tier] : computeTime(tier);
+	}
+	
+	public int getXp(int tier) {
+		return (tier >= 1 && tier <= TIERS) ? xpByTier[tier] : computeXp(tier);
+	}
+	
 	public int getXp(ItemStack input) {
-		int tier = 1;
-		if (input.getItem() instanceof ItemMateria) {
-			tier = ((ItemMateria) input.getItem()).getTier() + 1;
-		}
-		return Math.max(1, cost * tier + (essentia.getCount() / 48));
+		return getXp(getTier(input));
 	}
 	
 	@Override
@@ -29,7 +29,7 @@ public class SerializerDissolution implements RecipeSerializer<RecipeDissolution
 	public RecipeDissolution read(Identifier id, PacketByteBuf buf) {
 		String group = buf.readString(32767);
 		Ingredient input = Ingredient.fromPacket(buf);
-		EssentiaStack essentia = new EssentiaStack(buf.readCompoundTag());
+		EssentiaStack essentia = EssentiaStack.fromPacket(buf);
 		ItemStack container = buf.readItemStack();
 		return new RecipeDissolution(id, group, input, essentia, container);
 	}
@@ -38,7 +38,7 @@ public class SerializerDissolution implements RecipeSerializer<RecipeDissolution
 	public void write(PacketByteBuf buf, RecipeDissolution recipe) {
 		buf.writeString(recipe.group);
 		recipe.input.write(buf);
-		buf.writeCompoundTag(recipe.essentia.toTag());
+		recipe.essentia.write(buf);
 		buf.writeItemStack(recipe.container);
 	}
 	
@@ -30,7 +30,7 @@ public class SerializerSynthesis implements RecipeSerializer<RecipeSynthesis> {
 		String group = buf.readString(32767);
 		Ingredient target = Ingredient.fromPacket(buf);
 		Ingredient materia = Ingredient.fromPacket(buf);
-		EssentiaStack essentia = new EssentiaStack(buf.readCompoundTag());
+		EssentiaStack essentia = EssentiaStack.fromPacket(buf);
 		Ingredient container = Ingredient.fromPacket(buf);
 		int cost = buf.readVarInt();
 		return new RecipeSynthesis(id, group, target, materia, essentia, container, cost);
@@ -41,7 +41,7 @@ public class SerializerSynthesis implements RecipeSerializer<RecipeSynthesis> {
 		buf.writeString(recipe.group);
 		recipe.target.write(buf);
 		recipe.materia.write(buf);
-		buf.writeCompoundTag(recipe.essentia.toTag());
+		recipe.essentia.write(buf);
 		recipe.container.write(buf);
 		buf.writeVarInt(recipe.cost);
 	}
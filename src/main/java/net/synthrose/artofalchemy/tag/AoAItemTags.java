@@ -0,0 +1,15 @@
+package net.synthrose.artofalchemy.tag;
+
+import net.synthrose.artofalchemy.ArtOfAlchemy;
+
+public class AoAItemTags {
+	
+	public static final CachedItemTag CONTAINERS = register("containers");
+	public static final CachedItemTag ESSENTIA_VESSEL = register("essentia_vessel");
+	public static final CachedItemTag MATERIA = register("materia");
+	
+	public static CachedItemTag register(String name) {
+		return new CachedItemTag(ArtOfAlchemy.id(name));
+	}
+	
+}
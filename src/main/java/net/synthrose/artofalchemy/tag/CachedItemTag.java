@@ -0,0 +1,57 @@
+package net.synthrose.artofalchemy.tag;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.tag.ItemTags;
+import net.minecraft.tag.Tag;
+import net.minecraft.tag.TagContainer;
+import net.minecraft.util.Identifier;
+
+// An item tag resolved into an ItemBitSet. Both a server data reload and a client tag sync install a
+// new item tag container, so the bits are rebuilt whenever the current container isn't the one they
+// were built from; every other lookup is an identity check plus a bit test.
+public class CachedItemTag {
+	
+	private final Identifier id;
+	private volatile Snapshot snapshot = null;
+	
+	public CachedItemTag(Identifier id) {
+		this.id = id;
+	}
+	
+	public Identifier getId() {
+		return id;
+	}
+	
+	public boolean contains(Item item) {
+		return getBits().contains(item);
+	}
+	
+	public boolean contains(ItemStack stack) {
+		return getBits().contains(stack);
+	}
+	
+	public ItemBitSet getBits() {
+		TagContainer<Item> container = ItemTags.getContainer();
+		Snapshot current = snapshot;
+		if (current == null || current.container != container) {
+			Tag<Item> tag = container.get(id);
+			current = new Snapshot(container, (tag != null) ? ItemBitSet.of(tag.values()) : ItemBitSet.EMPTY);
+			snapshot = current;
+		}
+		return current.bits;
+	}
+	
+	private static final class Snapshot {
+		
+		private final TagContainer<Item> container;
+		private final ItemBitSet bits;
+		
+		private Snapshot(TagContainer<Item> container, ItemBitSet bits) {
+			this.container = container;
+			this.bits = bits;
+		}
+		
+	}
+	
+}
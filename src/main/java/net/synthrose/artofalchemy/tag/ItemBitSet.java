@@ -0,0 +1,66 @@
+package net.synthrose.artofalchemy.tag;
+
+import java.util.Collection;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.registry.Registry;
+
+// Immutable set of items as a bitset over their raw ids, so membership is a single bit test
+public final class ItemBitSet {
+	
+	public static final ItemBitSet EMPTY = new ItemBitSet(new long[0]);
+	
+	private final long[] bits;
+	
+	private ItemBitSet(long[] bits) {
+		this.bits = bits;
+	}
+	
+	public static ItemBitSet of(IntList ids) {
+		long[] bits = new long[words()];
+		for (int i = 0; i < ids.size(); i++) {
+			set(bits, ids.getInt(i));
+		}
+		return new ItemBitSet(bits);
+	}
+	
+	public static ItemBitSet of(Collection<Item> items) {
+		long[] bits = new long[words()];
+		for (Item item : items) {
+			set(bits, Registry.ITEM.getRawId(item));
+		}
+		return new ItemBitSet(bits);
+	}
+	
+	private static int words() {
+		return (rawIdBound() + 63) >>> 6;
+	}
+	
+	// One past the highest item raw id. Raw ids from a saved or remapped registry can have gaps, so
+	// this isn't simply the number of items.
+	public static int rawIdBound() {
+		int max = -1;
+		for (Item item : Registry.ITEM) {
+			max = Math.max(max, Registry.ITEM.getRawId(item));
+		}
+		return max + 1;
+	}
+	
+	private static void set(long[] bits, int id) {
+		if (id >= 0 && (id >>> 6) < bits.length) {
+			bits[id >>> 6] |= 1L << id;
+		}
+	}
+	
+	public boolean contains(Item item) {
+		int id = Registry.ITEM.getRawId(item);
+		return id >= 0 && (id >>> 6) < bits.length && (bits[id >>> 6] & (1L << id)) != 0;
+	}
+	
+	public boolean contains(ItemStack stack) {
+		return !stack.isEmpty() && contains(stack.getItem());
+	}
+	
+}